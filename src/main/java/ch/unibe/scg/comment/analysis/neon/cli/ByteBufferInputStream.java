@@ -0,0 +1,48 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Reads the remaining bytes of a buffer, without copying them.
+ */
+public class ByteBufferInputStream extends InputStream {
+
+	private final ByteBuffer buffer;
+
+	public ByteBufferInputStream(ByteBuffer buffer) {
+		super();
+		this.buffer = buffer.duplicate();
+	}
+
+	@Override
+	public int read() {
+		return this.buffer.hasRemaining() ? this.buffer.get() & 0xFF : -1;
+	}
+
+	@Override
+	public int read(byte[] bytes, int offset, int length) {
+		if (length == 0) {
+			return 0;
+		}
+		if (!this.buffer.hasRemaining()) {
+			return -1;
+		}
+		int n = Math.min(length, this.buffer.remaining());
+		this.buffer.get(bytes, offset, n);
+		return n;
+	}
+
+	@Override
+	public long skip(long n) {
+		int skipped = (int) Math.max(Math.min(n, this.buffer.remaining()), 0);
+		this.buffer.position(this.buffer.position() + skipped);
+		return skipped;
+	}
+
+	@Override
+	public int available() {
+		return this.buffer.remaining();
+	}
+
+}
@@ -0,0 +1,255 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.classifiers.Classifier;
+import weka.core.SerializationHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Loads the serialized classifiers in "classifier/[data]/[category].classifier" on first use and keeps them until
+ * their serialized size exceeds the budget, evicting the least recently used first. Safe to share across threads, a
+ * classifier is loaded once even if requested concurrently. The classifiers themselves are shared as well, callers
+ * must not use the same classifier concurrently, except for {@link CompiledForest}s.
+ * <p>
+ * If a {@link CompiledForest} compiled from the serialized classifier is next to it, in
+ * "classifier/[data]/[category].forest", it is loaded instead. If the data source has a {@link ModelBundle}, the
+ * classifiers and compiled forests are read from the bundle instead.
+ */
+public class ClassifierRegistry {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ClassifierRegistry.class);
+	private static ClassifierRegistry instance;
+	private final long budget;
+	// whether to load compiled forests instead of the serialized classifiers, if compiled
+	private final boolean compiled;
+	private final LinkedHashMap<String, Entry> entries;
+	private long size;
+	private long hits;
+	private long misses;
+	private long evictions;
+	private long loadNanos;
+
+	/**
+	 * @param budget bytes of serialized classifiers to keep loaded, the most recently used classifier is always kept
+	 */
+	public ClassifierRegistry(long budget) {
+		this(budget, true);
+	}
+
+	/**
+	 * @param budget   bytes of serialized classifiers to keep loaded, the most recently used classifier is always kept
+	 * @param compiled whether to load the {@link CompiledForest} in "classifier/[data]/[category].forest" instead of
+	 *                 the serialized classifier, if it was compiled from the serialized classifier
+	 */
+	public ClassifierRegistry(long budget, boolean compiled) {
+		super();
+		this.budget = budget;
+		this.compiled = compiled;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true);
+	}
+
+	/**
+	 * @return the registry shared by the whole process, its budget is taken from the system property
+	 * "classifiers.budget", unbounded by default, compiled forests are loaded unless "classifiers.compiled" is false
+	 */
+	public static synchronized ClassifierRegistry getInstance() {
+		if (instance == null) {
+			instance = new ClassifierRegistry(Long.getLong("classifiers.budget", Long.MAX_VALUE),
+					!"false".equals(System.getProperty("classifiers.compiled"))
+			);
+		}
+		return instance;
+	}
+
+	public boolean contains(String data, String category) {
+		ModelBundle bundle;
+		try {
+			bundle = ModelBundle.getInstance(data);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		if (bundle != null) {
+			return bundle.contains(String.format("%s.classifier", category));
+		}
+		return ClassifierRegistry.class.getClassLoader().getResource(this.path(data, category)) != null;
+	}
+
+	public Classifier get(String data, String category) throws Exception {
+		String path = this.path(data, category);
+		Entry entry;
+		boolean load = false;
+		synchronized (this) {
+			entry = this.entries.get(path);
+			if (entry == null) {
+				this.misses = this.misses + 1;
+				entry = new Entry();
+				this.entries.put(path, entry);
+				load = true;
+			} else {
+				this.hits = this.hits + 1;
+			}
+		}
+		if (load) {
+			this.load(data, category, path, entry);
+		}
+		try {
+			return entry.classifier.get();
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof Error) {
+				throw (Error) e.getCause();
+			}
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	/**
+	 * @return total time spent loading classifiers in milliseconds
+	 */
+	public synchronized long getLoadTime() {
+		return this.loadNanos / 1_000_000;
+	}
+
+	/**
+	 * @return serialized size of all loaded classifiers in bytes
+	 */
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ClassifierRegistry{" + "loaded=" + this.entries.size() + ", size=" + this.size + ", budget="
+				+ this.budget + ", hits=" + this.hits + ", misses=" + this.misses + ", evictions=" + this.evictions
+				+ ", loadTime=" + this.getLoadTime() + '}';
+	}
+
+	private void load(String data, String category, String path, Entry entry) throws Exception {
+		long start = System.nanoTime();
+		long size;
+		Classifier classifier;
+		try {
+			ModelBundle bundle = ModelBundle.getInstance(data);
+			if (bundle == null) {
+				byte[] bytes;
+				try (InputStream input = ClassifierRegistry.class.getClassLoader().getResourceAsStream(path)) {
+					if (input == null) {
+						throw new FileNotFoundException(String.format("No classifier %s", path));
+					}
+					bytes = input.readAllBytes();
+				}
+				CompiledForest compiled = this.compiled ? this.compiled(path, bytes) : null;
+				classifier = compiled != null
+						? compiled
+						: (Classifier) SerializationHelper.read(new ByteArrayInputStream(bytes));
+				size = compiled != null ? compiled.getSize() : bytes.length;
+			} else {
+				String name = String.format("%s.classifier", category);
+				CompiledForest compiled = this.compiled ? this.compiled(bundle, category) : null;
+				classifier = compiled != null ? compiled : (Classifier) SerializationHelper.read(bundle.stream(name));
+				size = compiled != null ? compiled.getSize() : bundle.getLength(name);
+			}
+		} catch (Throwable e) {
+			// errors too, such as a forest that does not fit into memory, others would wait for the entry forever
+			synchronized (this) {
+				this.entries.remove(path, entry);
+			}
+			entry.classifier.completeExceptionally(e);
+			throw e;
+		}
+		long nanos = System.nanoTime() - start;
+		LOGGER.debug("{} loaded in {} ms", path, nanos / 1_000_000);
+		synchronized (this) {
+			entry.size = size;
+			this.size = this.size + entry.size;
+			this.loadNanos = this.loadNanos + nanos;
+			this.evict(entry);
+		}
+		entry.classifier.complete(classifier);
+	}
+
+	/**
+	 * @return the forest compiled from the classifier next to it, null if there is none or if it is stale
+	 */
+	private CompiledForest compiled(String path, byte[] bytes) throws Exception {
+		String compiledPath = path.replaceAll("\\.classifier$", ".forest");
+		try (InputStream input = ClassifierRegistry.class.getClassLoader().getResourceAsStream(compiledPath)) {
+			if (input == null) {
+				return null;
+			}
+			CompiledForest compiled = CompiledForest.read(input.readAllBytes());
+			if (!Arrays.equals(compiled.getSource(), MessageDigest.getInstance("SHA-256").digest(bytes))) {
+				LOGGER.warn("{} is stale, recompile it", compiledPath);
+				return null;
+			}
+			return compiled;
+		}
+	}
+
+	/**
+	 * @return the forest compiled from the classifier in the bundle, read in place, null if there is none or if it
+	 * is stale
+	 */
+	private CompiledForest compiled(ModelBundle bundle, String category) throws IOException {
+		String name = String.format("%s.forest", category);
+		if (!bundle.contains(name)) {
+			return null;
+		}
+		CompiledForest compiled = CompiledForest.read(bundle.get(name));
+		if (!Arrays.equals(compiled.getSource(), bundle.getChecksum(String.format("%s.classifier", category)))) {
+			LOGGER.warn("{} of {} is stale, rebundle it", name, bundle.getData());
+			return null;
+		}
+		return compiled;
+	}
+
+	private void evict(Entry keep) {
+		Iterator<Map.Entry<String, Entry>> iterator = this.entries.entrySet().iterator();
+		while (this.size > this.budget && iterator.hasNext()) {
+			Entry entry = iterator.next().getValue();
+			if (entry == keep || !entry.classifier.isDone()) {
+				// keep the one just loaded and those still loading
+				continue;
+			}
+			iterator.remove();
+			this.size = this.size - entry.size;
+			this.evictions = this.evictions + 1;
+		}
+	}
+
+	private String path(String data, String category) {
+		return String.format("classifier/%s/%s.classifier", data, category);
+	}
+
+	private static class Entry {
+
+		private final CompletableFuture<Classifier> classifier = new CompletableFuture<>();
+		private long size;
+
+	}
+
+}
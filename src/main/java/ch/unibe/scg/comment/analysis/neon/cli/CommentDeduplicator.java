@@ -0,0 +1,239 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Finds comments near-duplicate to a comment classified before, so that their labels can be reused instead of parsing
+ * and classifying the comment again. Comments are near-duplicates if they have the same number of sentences with the
+ * same number of words each and if the Jaccard similarity of their word pairs, estimated by MinHash, is at least the
+ * threshold. Candidates are looked up by locality-sensitive hashing of bands of the MinHash signature.
+ * <p>
+ * Holds at most the capacity of representatives, dropping the oldest first. Safe to share across threads.
+ */
+public class CommentDeduplicator {
+
+	private static final Pattern WORD = Pattern.compile("[^\\p{L}\\p{N}]+");
+	private static final int SHINGLE = 2;
+	private static final int BANDS = 16;
+	private static final int ROWS = 4;
+	private static final int HASHES = BANDS * ROWS;
+	private final double threshold;
+	private final int capacity;
+	private final Map<Long, List<Representative>> buckets;
+	private final Deque<Representative> representatives;
+	private long comments;
+	private long duplicates;
+	private long sentences;
+
+	/**
+	 * @param threshold estimated Jaccard similarity of near-duplicates, from 0 to 1
+	 * @param capacity  number of representatives to keep
+	 */
+	public CommentDeduplicator(double threshold, int capacity) {
+		super();
+		this.threshold = threshold;
+		this.capacity = capacity;
+		this.buckets = new HashMap<>();
+		this.representatives = new ArrayDeque<>();
+	}
+
+	/**
+	 * @param sentences of the normalized comment
+	 */
+	public Signature signature(List<String> sentences) {
+		int[] structure = new int[sentences.size()];
+		List<String> words = new ArrayList<>();
+		for (int i = 0; i < sentences.size(); i = i + 1) {
+			for (String word : WORD.split(sentences.get(i).toLowerCase(Locale.ROOT))) {
+				if (!word.isEmpty()) {
+					words.add(word);
+					structure[i] = structure[i] + 1;
+				}
+			}
+		}
+		long[] minHashes = new long[HASHES];
+		Arrays.fill(minHashes, Long.MAX_VALUE);
+		for (int i = 0; i == 0 || i + SHINGLE <= words.size(); i = i + 1) {
+			long shingle = this.hash(words.subList(i, Math.min(i + SHINGLE, words.size())));
+			for (int h = 0; h < HASHES; h = h + 1) {
+				minHashes[h] = Math.min(minHashes[h], this.mix(shingle + (h + 1) * 0x9E3779B97F4A7C15L));
+			}
+		}
+		long[] bands = new long[BANDS];
+		for (int b = 0; b < BANDS; b = b + 1) {
+			long band = b;
+			for (int r = 0; r < ROWS; r = r + 1) {
+				band = this.mix(band * 31 + minHashes[b * ROWS + r]);
+			}
+			bands[b] = band;
+		}
+		return new Signature(structure, minHashes, bands);
+	}
+
+	/**
+	 * Representatives added by other owners are only found once complete, those added by the owner also before.
+	 *
+	 * @param owner classifying the comment
+	 * @return representative the comment is a near-duplicate of, null if none
+	 */
+	public synchronized Representative find(Signature signature, Object owner) {
+		this.comments = this.comments + 1;
+		for (long band : signature.bands) {
+			for (Representative representative : this.buckets.getOrDefault(band, List.of())) {
+				if ((representative.owner == owner || representative.masks != null) && this.similar(signature,
+						representative.signature
+				)) {
+					this.duplicates = this.duplicates + 1;
+					this.sentences = this.sentences + signature.structure.length;
+					return representative;
+				}
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @param owner classifying the comment, must {@link #complete(Representative, long[])} or
+	 *              {@link #remove(Representative)} the representative
+	 */
+	public synchronized Representative add(Signature signature, Object owner) {
+		Representative representative = new Representative(signature, owner);
+		for (long band : signature.bands) {
+			this.buckets.computeIfAbsent(band, k -> new ArrayList<>()).add(representative);
+		}
+		this.representatives.addLast(representative);
+		if (this.representatives.size() > this.capacity) {
+			this.remove(this.representatives.getFirst());
+		}
+		return representative;
+	}
+
+	/**
+	 * @param masks bitmask of the categories of each sentence of the representative
+	 */
+	public synchronized void complete(Representative representative, long[] masks) {
+		if (masks.length != representative.signature.structure.length) {
+			throw new IllegalArgumentException("masks must match sentences");
+		}
+		representative.masks = masks;
+	}
+
+	public synchronized void remove(Representative representative) {
+		for (long band : representative.signature.bands) {
+			List<Representative> bucket = this.buckets.get(band);
+			if (bucket != null) {
+				bucket.remove(representative);
+				if (bucket.isEmpty()) {
+					this.buckets.remove(band);
+				}
+			}
+		}
+		this.representatives.remove(representative);
+	}
+
+	public synchronized long getComments() {
+		return this.comments;
+	}
+
+	public synchronized long getDuplicates() {
+		return this.duplicates;
+	}
+
+	/**
+	 * @return number of sentences of duplicates, which were neither parsed nor classified
+	 */
+	public synchronized long getSentences() {
+		return this.sentences;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "CommentDeduplicator{" + "comments=" + this.comments + ", duplicates=" + this.duplicates
+				+ ", savedParses=" + this.sentences + ", representatives=" + this.representatives.size() + '}';
+	}
+
+	private boolean similar(Signature a, Signature b) {
+		if (!Arrays.equals(a.structure, b.structure)) {
+			return false;
+		}
+		int equal = 0;
+		for (int h = 0; h < HASHES; h = h + 1) {
+			if (a.minHashes[h] == b.minHashes[h]) {
+				equal = equal + 1;
+			}
+		}
+		return equal >= this.threshold * HASHES;
+	}
+
+	/**
+	 * FNV-1a of the words, separated by spaces.
+	 */
+	private long hash(List<String> words) {
+		long hash = 0xcbf29ce484222325L;
+		for (String word : words) {
+			for (int i = 0; i < word.length(); i = i + 1) {
+				hash = (hash ^ word.charAt(i)) * 0x100000001b3L;
+			}
+			hash = (hash ^ ' ') * 0x100000001b3L;
+		}
+		return hash;
+	}
+
+	/**
+	 * Finalizer of MurmurHash3, spreads the bits of the value over the whole hash.
+	 */
+	private long mix(long value) {
+		long h = value;
+		h = (h ^ h >>> 33) * 0xff51afd7ed558ccdL;
+		h = (h ^ h >>> 33) * 0xc4ceb9fe1a85ec53L;
+		return h ^ h >>> 33;
+	}
+
+	public static class Signature {
+
+		// number of words of each sentence
+		private final int[] structure;
+		private final long[] minHashes;
+		private final long[] bands;
+
+		private Signature(int[] structure, long[] minHashes, long[] bands) {
+			this.structure = structure;
+			this.minHashes = minHashes;
+			this.bands = bands;
+		}
+
+	}
+
+	public static class Representative {
+
+		private final Signature signature;
+		private final Object owner;
+		private volatile long[] masks;
+
+		private Representative(Signature signature, Object owner) {
+			this.signature = signature;
+			this.owner = owner;
+		}
+
+		public int getSentences() {
+			return this.signature.structure.length;
+		}
+
+		/**
+		 * @return bitmask of the categories of each sentence, null until complete
+		 */
+		public long[] getMasks() {
+			return this.masks;
+		}
+
+	}
+
+}
@@ -0,0 +1,211 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Finds the comments in source code by scanning it once, skipping string and character literals, so that comment
+ * delimiters in literals are not taken for comments. Comments include their delimiters, unterminated comments and
+ * literals end the scan. Safe to share across threads.
+ */
+public abstract class CommentLexer {
+
+	/**
+	 * @param data language of the source code, [java|pharo|python]
+	 */
+	public static CommentLexer of(String data) {
+		if ("java".equals(data)) {
+			return new Java();
+		} else if ("pharo".equals(data)) {
+			return new Pharo();
+		} else if ("python".equals(data)) {
+			return new Python();
+		}
+		throw new IllegalArgumentException(String.format("comments of %s are unknown", data));
+	}
+
+	/**
+	 * @return ranges of the comments in the source, in order
+	 */
+	public List<Range> comments(CharSequence source) {
+		List<Range> comments = new ArrayList<>();
+		int i = 0;
+		while (i >= 0 && i < source.length()) {
+			i = this.scan(source, i, comments);
+		}
+		return comments;
+	}
+
+	/**
+	 * Scans the token starting at the index, adding it to the comments if it is one.
+	 *
+	 * @return the index after the token, -1 if the token is unterminated
+	 */
+	protected abstract int scan(CharSequence source, int i, List<Range> comments);
+
+	/**
+	 * @return the index after the closing quote, the line end if the literal is unterminated on its line, -1 if the
+	 * source ends
+	 */
+	protected int skipEscaped(CharSequence source, int i, char quote) {
+		int j = i + 1;
+		while (j < source.length()) {
+			char c = source.charAt(j);
+			if (c == '\\') {
+				j = j + 2;
+			} else if (c == quote) {
+				return j + 1;
+			} else if (c == '\n' || c == '\r') {
+				return j;
+			} else {
+				j = j + 1;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * @return the index after three unescaped quotes following the three quotes at the index, -1 if there are none
+	 */
+	protected int skipTripleQuoted(CharSequence source, int i, char quote) {
+		int j = i + 3;
+		while (j + 2 < source.length()) {
+			char c = source.charAt(j);
+			if (c == '\\') {
+				j = j + 2;
+			} else if (this.isTripleQuote(source, j, quote)) {
+				return j + 3;
+			} else {
+				j = j + 1;
+			}
+		}
+		return -1;
+	}
+
+	protected boolean isTripleQuote(CharSequence source, int i, char quote) {
+		return i + 2 < source.length() && source.charAt(i) == quote && source.charAt(i + 1) == quote
+				&& source.charAt(i + 2) == quote;
+	}
+
+	/**
+	 * @return the index of the line end at or after the index, the length of the source if there is none
+	 */
+	protected int lineEnd(CharSequence source, int i) {
+		int j = i;
+		while (j < source.length() && !this.isLineEnd(source.charAt(j))) {
+			j = j + 1;
+		}
+		return j;
+	}
+
+	/**
+	 * Same line ends as for "." in regular expressions.
+	 */
+	protected boolean isLineEnd(char c) {
+		return c == '\n' || c == '\r' || c == '\u0085' || c == '\u2028' || c == '\u2029';
+	}
+
+	/**
+	 * Line comments "//", block and doc comments "/*", skipping strings, text blocks and characters.
+	 */
+	private static class Java extends CommentLexer {
+
+		@Override
+		protected int scan(CharSequence source, int i, List<Range> comments) {
+			char c = source.charAt(i);
+			char next = i + 1 < source.length() ? source.charAt(i + 1) : 0;
+			if (c == '/' && next == '/') {
+				int end = this.lineEnd(source, i + 2);
+				comments.add(new Range(i, end));
+				return end;
+			} else if (c == '/' && next == '*') {
+				for (int j = i + 2; j + 1 < source.length(); j = j + 1) {
+					if (source.charAt(j) == '*' && source.charAt(j + 1) == '/') {
+						comments.add(new Range(i, j + 2));
+						return j + 2;
+					}
+				}
+				return -1;
+			} else if (this.isTripleQuote(source, i, '"')) {
+				return this.skipTripleQuoted(source, i, '"');
+			} else if (c == '"' || c == '\'') {
+				return this.skipEscaped(source, i, c);
+			}
+			return i + 1;
+		}
+
+	}
+
+	/**
+	 * Comments in double quotes, which are escaped by doubling them, skipping strings in single quotes and characters.
+	 */
+	private static class Pharo extends CommentLexer {
+
+		@Override
+		protected int scan(CharSequence source, int i, List<Range> comments) {
+			char c = source.charAt(i);
+			if (c == '"') {
+				int end = this.skipDoubled(source, i, '"');
+				if (end >= 0) {
+					comments.add(new Range(i, end));
+				}
+				return end;
+			} else if (c == '\'') {
+				return this.skipDoubled(source, i, '\'');
+			} else if (c == '$') {
+				return i + 2;
+			}
+			return i + 1;
+		}
+
+		/**
+		 * @return the index after the closing quote, -1 if the literal is unterminated
+		 */
+		private int skipDoubled(CharSequence source, int i, char quote) {
+			int j = i + 1;
+			while (j < source.length()) {
+				if (source.charAt(j) == quote) {
+					if (j + 1 < source.length() && source.charAt(j + 1) == quote) {
+						j = j + 2;
+					} else {
+						return j + 1;
+					}
+				} else {
+					j = j + 1;
+				}
+			}
+			return -1;
+		}
+
+	}
+
+	/**
+	 * Line comments "#" and triple-quoted strings, which hold the docstrings, skipping other strings.
+	 */
+	private static class Python extends CommentLexer {
+
+		@Override
+		protected int scan(CharSequence source, int i, List<Range> comments) {
+			char c = source.charAt(i);
+			if (c == '#') {
+				int end = this.lineEnd(source, i + 1);
+				comments.add(new Range(i, end));
+				return end;
+			} else if (c == '"' || c == '\'') {
+				if (!this.isTripleQuote(source, i, c)) {
+					return this.skipEscaped(source, i, c);
+				}
+				int end = this.skipTripleQuoted(source, i, c);
+				if (end >= 0) {
+					comments.add(new Range(i, end));
+				}
+				return end;
+			}
+			return i + 1;
+		}
+
+	}
+
+}
@@ -0,0 +1,425 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import weka.classifiers.Classifier;
+import weka.classifiers.trees.RandomForest;
+import weka.classifiers.trees.RandomTree;
+import weka.core.Capabilities;
+import weka.core.CapabilitiesHandler;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.Utils;
+
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * A {@link RandomForest} or {@link RandomTree} compiled to flat arrays, the nodes of all trees are stored in parallel
+ * arrays, the successors of a node are stored next to each other. Predicts the same distributions as Weka without
+ * allocating, bit for bit for instances without missing values, as floating point operations are done in the same
+ * order. Reads its arrays in place instead of deserializing an object graph. Immutable and thus safe to use
+ * concurrently.
+ * <p>
+ * Instances may be dense or sparse, attributes are looked up by {@link Instance#value(int)}. Not serializable, as
+ * its arrays may be memory-mapped, a forest is stored by {@link #write()} and restored by {@link #read(ByteBuffer)}.
+ */
+public class CompiledForest implements Classifier, CapabilitiesHandler {
+
+	public static final int MAGIC = 0x4E454F46;
+	public static final int VERSION = 1;
+	private static final int LEAF = -1;
+	private static final int NONE = -1;
+	// SHA-256 of the serialized classifier compiled from
+	private final byte[] source;
+	private final int classes;
+	// root node of each tree
+	private final IntBuffer roots;
+	// attribute split on by each node, LEAF if a leaf
+	private final IntBuffer attribute;
+	// 1 if the attribute is nominal, split by value instead of split point
+	private final ByteBuffer nominal;
+	private final DoubleBuffer split;
+	// first successor of each node and number of successors
+	private final IntBuffer successor;
+	private final IntBuffer successors;
+	// share of the training instances of the parent that reached each node
+	private final DoubleBuffer proportion;
+	// offset of the normalized class distribution of each node in distributions, NONE if missing
+	private final IntBuffer distribution;
+	private final DoubleBuffer distributions;
+
+	private CompiledForest(
+			byte[] source,
+			int classes,
+			IntBuffer roots,
+			IntBuffer attribute,
+			ByteBuffer nominal,
+			DoubleBuffer split,
+			IntBuffer successor,
+			IntBuffer successors,
+			DoubleBuffer proportion,
+			IntBuffer distribution,
+			DoubleBuffer distributions
+	) {
+		super();
+		this.source = source;
+		this.classes = classes;
+		this.roots = roots;
+		this.attribute = attribute;
+		this.nominal = nominal;
+		this.split = split;
+		this.successor = successor;
+		this.successors = successors;
+		this.proportion = proportion;
+		this.distribution = distribution;
+		this.distributions = distributions;
+	}
+
+	/**
+	 * @param classifier a {@link RandomForest} or {@link RandomTree} with a nominal class
+	 * @param source     SHA-256 of the serialized classifier, to tell whether a compiled forest is stale
+	 */
+	public static CompiledForest compile(Classifier classifier, byte[] source) throws Exception {
+		List<RandomTree> trees = new ArrayList<>();
+		if (classifier instanceof RandomForest) {
+			for (Classifier tree : (Classifier[]) field(classifier, "m_Classifiers")) {
+				trees.add((RandomTree) tree);
+			}
+		} else if (classifier instanceof RandomTree) {
+			trees.add((RandomTree) classifier);
+		} else {
+			throw new IllegalArgumentException(String.format("%s cannot be compiled", classifier.getClass()));
+		}
+		Compiler compiler = new Compiler();
+		int[] roots = new int[trees.size()];
+		int classes = -1;
+		for (int t = 0; t < trees.size(); t = t + 1) {
+			RandomTree tree = trees.get(t);
+			Instances info = (Instances) field(tree, "m_Info");
+			if (!info.classAttribute().isNominal()) {
+				throw new IllegalArgumentException("class must be nominal");
+			}
+			if (classes >= 0 && classes != info.numClasses()) {
+				throw new IllegalArgumentException("trees must have the same classes");
+			}
+			classes = info.numClasses();
+			roots[t] = compiler.compile(tree, info);
+		}
+		return new CompiledForest(source,
+				classes,
+				IntBuffer.wrap(roots),
+				IntBuffer.wrap(compiler.attribute.stream().mapToInt(Integer::intValue).toArray()),
+				ByteBuffer.wrap(compiler.nominal()),
+				DoubleBuffer.wrap(compiler.split.stream().mapToDouble(Double::doubleValue).toArray()),
+				IntBuffer.wrap(compiler.successor.stream().mapToInt(Integer::intValue).toArray()),
+				IntBuffer.wrap(compiler.successors.stream().mapToInt(Integer::intValue).toArray()),
+				DoubleBuffer.wrap(compiler.proportion.stream().mapToDouble(Double::doubleValue).toArray()),
+				IntBuffer.wrap(compiler.distribution.stream().mapToInt(Integer::intValue).toArray()),
+				DoubleBuffer.wrap(compiler.distributions.stream().mapToDouble(Double::doubleValue).toArray())
+		);
+	}
+
+	public static CompiledForest read(byte[] bytes) {
+		return read(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * Reads the arrays in place, without copying them, so that a forest read from a memory-mapped file stays in the
+	 * page cache instead of the heap.
+	 *
+	 * @param bytes from its position to its limit, see {@link #write()}
+	 */
+	public static CompiledForest read(ByteBuffer bytes) {
+		ByteBuffer buffer = bytes.slice();
+		if (buffer.getInt() != MAGIC || buffer.get() != VERSION) {
+			throw new IllegalArgumentException("not a compiled forest of version " + VERSION);
+		}
+		byte[] source = new byte[buffer.get()];
+		buffer.get(source);
+		int classes = buffer.getInt();
+		int trees = buffer.getInt();
+		int nodes = buffer.getInt();
+		int distributions = buffer.getInt();
+		return new CompiledForest(source,
+				classes,
+				section(buffer, Integer.BYTES * trees).asIntBuffer(),
+				section(buffer, Integer.BYTES * nodes).asIntBuffer(),
+				section(buffer, nodes),
+				section(buffer, Double.BYTES * nodes).asDoubleBuffer(),
+				section(buffer, Integer.BYTES * nodes).asIntBuffer(),
+				section(buffer, Integer.BYTES * nodes).asIntBuffer(),
+				section(buffer, Double.BYTES * nodes).asDoubleBuffer(),
+				section(buffer, Integer.BYTES * nodes).asIntBuffer(),
+				section(buffer, Double.BYTES * distributions).asDoubleBuffer()
+		);
+	}
+
+	/**
+	 * The magic bytes "NEOF", the version 1, the source hash, the number of classes, trees, nodes and distribution
+	 * values, followed by the arrays in order of the fields, booleans as bytes, all big-endian.
+	 */
+	public byte[] write() {
+		int nodes = this.numNodes();
+		ByteBuffer buffer = ByteBuffer.allocate(this.getSize());
+		buffer.putInt(MAGIC).put((byte) VERSION).put((byte) this.source.length).put(this.source);
+		buffer.putInt(this.classes).putInt(this.roots.limit()).putInt(nodes).putInt(this.distributions.limit());
+		section(buffer, Integer.BYTES * this.roots.limit()).asIntBuffer().put(this.roots.duplicate());
+		section(buffer, Integer.BYTES * nodes).asIntBuffer().put(this.attribute.duplicate());
+		section(buffer, nodes).put(this.nominal.duplicate());
+		section(buffer, Double.BYTES * nodes).asDoubleBuffer().put(this.split.duplicate());
+		section(buffer, Integer.BYTES * nodes).asIntBuffer().put(this.successor.duplicate());
+		section(buffer, Integer.BYTES * nodes).asIntBuffer().put(this.successors.duplicate());
+		section(buffer, Double.BYTES * nodes).asDoubleBuffer().put(this.proportion.duplicate());
+		section(buffer, Integer.BYTES * nodes).asIntBuffer().put(this.distribution.duplicate());
+		section(buffer, Double.BYTES * this.distributions.limit()).asDoubleBuffer().put(this.distributions.duplicate());
+		return buffer.array();
+	}
+
+	/**
+	 * @return the next length bytes of the buffer, which is advanced past them
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, int length) {
+		ByteBuffer section = buffer.slice(buffer.position(), length);
+		buffer.position(buffer.position() + length);
+		return section;
+	}
+
+	/**
+	 * @return length of the forest written, in bytes
+	 */
+	public int getSize() {
+		return Integer.BYTES + 2 + this.source.length + 4 * Integer.BYTES + Integer.BYTES * this.roots.limit()
+				+ this.numNodes() * (4 * Integer.BYTES + 1 + 2 * Double.BYTES)
+				+ Double.BYTES * this.distributions.limit();
+	}
+
+	public byte[] getSource() {
+		return this.source.clone();
+	}
+
+	public int numClasses() {
+		return this.classes;
+	}
+
+	public int numNodes() {
+		return this.attribute.limit();
+	}
+
+	/**
+	 * Same as {@link #classifyInstance(Instance)}, but without allocating.
+	 *
+	 * @param distribution filled with the distribution of the instance, of length {@link #numClasses()}
+	 * @return index of the predicted class, -1 if none is predicted
+	 */
+	public int classify(Instance instance, double[] distribution) {
+		this.distribution(instance, distribution);
+		double max = 0;
+		int maxIndex = 0;
+		for (int i = 0; i < distribution.length; i = i + 1) {
+			if (distribution[i] > max) {
+				maxIndex = i;
+				max = distribution[i];
+			}
+		}
+		return max > 0 ? maxIndex : -1;
+	}
+
+	/**
+	 * Same as {@link #distributionForInstance(Instance)}, but without allocating.
+	 *
+	 * @param distribution filled with the distribution of the instance, of length {@link #numClasses()}
+	 */
+	public void distribution(Instance instance, double[] distribution) {
+		Arrays.fill(distribution, 0);
+		for (int i = 0; i < this.roots.limit(); i = i + 1) {
+			this.add(this.roots.get(i), instance, 1, distribution);
+		}
+		// as Bagging does
+		if (!Utils.eq(Utils.sum(distribution), 0)) {
+			Utils.normalize(distribution);
+		}
+	}
+
+	@Override
+	public double[] distributionForInstance(Instance instance) {
+		double[] distribution = new double[this.classes];
+		this.distribution(instance, distribution);
+		return distribution;
+	}
+
+	@Override
+	public double classifyInstance(Instance instance) {
+		int prediction = this.classify(instance, new double[this.classes]);
+		return prediction < 0 ? Utils.missingValue() : prediction;
+	}
+
+	@Override
+	public void buildClassifier(Instances data) {
+		throw new UnsupportedOperationException("compiled forests cannot be trained, compile a trained one instead");
+	}
+
+	@Override
+	public Capabilities getCapabilities() {
+		Capabilities capabilities = new Capabilities(this);
+		capabilities.enable(Capabilities.Capability.NOMINAL_ATTRIBUTES);
+		capabilities.enable(Capabilities.Capability.NUMERIC_ATTRIBUTES);
+		capabilities.enable(Capabilities.Capability.MISSING_VALUES);
+		capabilities.enable(Capabilities.Capability.NOMINAL_CLASS);
+		return capabilities;
+	}
+
+	/**
+	 * Adds the weighted distribution of the subtree to the sum, as {@code RandomTree.Tree} does. Successors without
+	 * distribution fall back to the distribution of their parent, missing values sum up all successors weighted by
+	 * their proportion.
+	 *
+	 * @return whether the subtree has a distribution
+	 */
+	private boolean add(int node, Instance instance, double weight, double[] sum) {
+		int attribute = this.attribute.get(node);
+		if (attribute != LEAF) {
+			if (instance.isMissing(attribute)) {
+				int first = this.successor.get(node);
+				for (int i = first; i < first + this.successors.get(node); i = i + 1) {
+					this.add(i, instance, weight * this.proportion.get(i), sum);
+				}
+				return true;
+			}
+			double value = instance.value(attribute);
+			int next;
+			if (this.nominal.get(node) != 0) {
+				next = this.successor.get(node) + (int) value;
+			} else {
+				next = this.successor.get(node) + (value < this.split.get(node) ? 0 : 1);
+			}
+			if (this.add(next, instance, weight, sum)) {
+				return true;
+			}
+		}
+		int offset = this.distribution.get(node);
+		if (offset == NONE) {
+			return false;
+		}
+		for (int i = 0; i < this.classes; i = i + 1) {
+			sum[i] = sum[i] + weight * this.distributions.get(offset + i);
+		}
+		return true;
+	}
+
+	private static Object field(Object object, String name) throws ReflectiveOperationException {
+		for (Class<?> type = object.getClass(); type != null; type = type.getSuperclass()) {
+			try {
+				Field field = type.getDeclaredField(name);
+				field.setAccessible(true);
+				return field.get(object);
+			} catch (NoSuchFieldException e) {
+				// declared by a superclass
+			}
+		}
+		throw new NoSuchFieldException(name);
+	}
+
+	/**
+	 * Lays out the nodes of trees breadth-first, so that the successors of a node are next to each other.
+	 */
+	private static class Compiler {
+
+		private final List<Integer> attribute = new ArrayList<>();
+		private final List<Boolean> nominal = new ArrayList<>();
+		private final List<Double> split = new ArrayList<>();
+		private final List<Integer> successor = new ArrayList<>();
+		private final List<Integer> successors = new ArrayList<>();
+		private final List<Double> proportion = new ArrayList<>();
+		private final List<Integer> distribution = new ArrayList<>();
+		private final List<Double> distributions = new ArrayList<>();
+
+		private int compile(RandomTree tree, Instances info) throws Exception {
+			int root = this.attribute.size();
+			Classifier zeroR = (Classifier) field(tree, "m_zeroR");
+			if (zeroR != null) {
+				// built without attributes, always predicts the prior distribution
+				Instance instance = new DenseInstance(info.numAttributes());
+				instance.setDataset(info);
+				this.add(1);
+				this.leaf(root, zeroR.distributionForInstance(instance));
+				return root;
+			}
+			boolean unclassified = tree.getAllowUnclassifiedInstances();
+			Deque<Object> nodes = new ArrayDeque<>();
+			nodes.add(field(tree, "m_Tree"));
+			this.add(1);
+			for (int i = root; !nodes.isEmpty(); i = i + 1) {
+				Object node = nodes.removeFirst();
+				int attribute = (Integer) field(node, "m_Attribute");
+				double[] distribution = (double[]) field(node, "m_ClassDistribution");
+				if (distribution != null) {
+					distribution = distribution.clone();
+					try {
+						Utils.normalize(distribution);
+					} catch (IllegalArgumentException e) {
+						// Weka fails to predict on an empty distribution, it is kept empty instead
+					}
+				} else if (unclassified) {
+					distribution = new double[info.numClasses()];
+				}
+				this.leaf(i, distribution);
+				if (attribute == LEAF) {
+					continue;
+				}
+				Object[] successors = (Object[]) field(node, "m_Successors");
+				double[] proportion = (double[]) field(node, "m_Prop");
+				this.attribute.set(i, attribute);
+				this.nominal.set(i, info.attribute(attribute).isNominal());
+				this.split.set(i, (Double) field(node, "m_SplitPoint"));
+				this.successor.set(i, this.attribute.size());
+				this.successors.set(i, successors.length);
+				int first = this.attribute.size();
+				this.add(successors.length);
+				for (int s = 0; s < successors.length; s = s + 1) {
+					this.proportion.set(first + s, proportion == null ? 0 : proportion[s]);
+					nodes.addLast(successors[s]);
+				}
+			}
+			return root;
+		}
+
+		private void add(int count) {
+			for (int i = 0; i < count; i = i + 1) {
+				this.attribute.add(LEAF);
+				this.nominal.add(false);
+				this.split.add(0.0);
+				this.successor.add(NONE);
+				this.successors.add(0);
+				this.proportion.add(1.0);
+				this.distribution.add(NONE);
+			}
+		}
+
+		private void leaf(int node, double[] distribution) {
+			if (distribution == null) {
+				return;
+			}
+			this.distribution.set(node, this.distributions.size());
+			for (double value : distribution) {
+				this.distributions.add(value);
+			}
+		}
+
+		private byte[] nominal() {
+			byte[] result = new byte[this.nominal.size()];
+			for (int i = 0; i < result.length; i = i + 1) {
+				result[i] = (byte) (this.nominal.get(i) ? 1 : 0);
+			}
+			return result;
+		}
+
+	}
+
+}
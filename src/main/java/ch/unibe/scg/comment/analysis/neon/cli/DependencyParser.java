@@ -0,0 +1,212 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import edu.stanford.nlp.ling.CoreAnnotations;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+import edu.stanford.nlp.pipeline.Annotation;
+import edu.stanford.nlp.pipeline.StanfordCoreNLP;
+import edu.stanford.nlp.semgraph.SemanticGraphFactory;
+import edu.stanford.nlp.trees.GrammaticalStructureFactory;
+import edu.stanford.nlp.trees.PennTreebankLanguagePack;
+import edu.stanford.nlp.trees.Tree;
+import edu.stanford.nlp.trees.TypedDependency;
+import edu.stanford.nlp.util.CoreMap;
+import org.neon.pathsFinder.model.Sentence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Parses text like NEON's {@link org.neon.engine.Parser#extract} and {@link org.neon.pathsFinder.engine.Parser#parse},
+ * but loads the models once instead of for every text and looks up parse trees in an optional {@link ParseCache}.
+ * Not to be used by multiple threads at once, see {@link ParserPool}.
+ */
+public class DependencyParser {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(DependencyParser.class);
+	private static final Pattern FILE_NAMES_AND_METHODS = Pattern.compile("[a-zA-Z0-9* ]+[.]+[a-z]+");
+	private static final Pattern THREE_DOTS = Pattern.compile("[.]{3}");
+	private static final Pattern TWO_QUESTION_MARKS = Pattern.compile("[?]{2}");
+	private static final Pattern SEGMENTS = Pattern.compile("([\\n]{2}|:|(?=[ ]{2,}[A-Z])|[.][ ]+|\\?\\n|\\.\\n)");
+	private static final Pattern LINES = Pattern.compile("(\\n|:)");
+	private static LexicalizedParser model;
+	private final LexicalizedParser parser;
+	private final StanfordCoreNLP pipeline;
+	private final GrammaticalStructureFactory grammaticalStructureFactory;
+	private final ParseCache cache;
+
+	public DependencyParser() {
+		this(null);
+	}
+
+	/**
+	 * @param cache to look up and store parse trees in, null to always parse
+	 */
+	public DependencyParser(ParseCache cache) {
+		super();
+		this.parser = model();
+		Properties properties = new Properties();
+		properties.put("annotators", "tokenize, ssplit");
+		this.pipeline = new StanfordCoreNLP(properties);
+		this.grammaticalStructureFactory = new PennTreebankLanguagePack().grammaticalStructureFactory();
+		this.cache = cache;
+	}
+
+	/**
+	 * The model is loaded once and shared by all parsers, as it is large and parsing with it is thread-safe.
+	 */
+	private static synchronized LexicalizedParser model() {
+		if (model == null) {
+			model = LexicalizedParser.loadModel();
+		}
+		return model;
+	}
+
+	/**
+	 * @return cache of parse trees, null if not caching
+	 */
+	public ParseCache getCache() {
+		return this.cache;
+	}
+
+	/**
+	 * @return the sentences NEON would match heuristics on, sentences failing to parse are skipped
+	 */
+	public List<Parse> parse(String text) {
+		List<Parse> result = new ArrayList<>();
+		String cleaned = this.cleanThreeDots(this.cleanFileNamesAndMethods(text));
+		for (String segment : SEGMENTS.split(cleaned)) {
+			Annotation document = new Annotation(segment);
+			this.pipeline.annotate(document);
+			for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) {
+				String sentenceText = sentence.get(CoreAnnotations.TextAnnotation.class);
+				try {
+					String cleanedSentence = sentenceText.replaceAll("[>]+\n", ".")
+							.replaceAll(">", "")
+							.replaceAll("<", "")
+							.replaceAll("_", " ");
+					Tree tree = this.tree(cleanedSentence);
+					result.add(new Parse(this.interrogative(tree),
+							this.grammaticalStructureFactory.newGrammaticalStructure(tree)
+									.typedDependenciesCCprocessed()
+					));
+				} catch (Exception e) {
+					LOGGER.warn("{} failed to parse", sentenceText, e);
+				} catch (OutOfMemoryError e) {
+					LOGGER.warn("{} too long, parsing its phrases", sentenceText);
+					this.parsePhrases(sentenceText, result);
+				} catch (Error e) {
+					LOGGER.warn("{} failed to parse, skipped", sentenceText, e);
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @return the sentences of the text as split and parsed by NEON to discover heuristics
+	 */
+	public ArrayList<Sentence> sentences(String text) {
+		ArrayList<Sentence> result = new ArrayList<>();
+		for (String line : LINES.split(text)) {
+			String cleaned = this.cleanThreeDots(this.cleanFileNamesAndMethods(line))
+					.replaceAll("_", " ")
+					.replaceAll(">", " ");
+			Annotation document = new Annotation(cleaned);
+			this.pipeline.annotate(document);
+			for (CoreMap sentence : document.get(CoreAnnotations.SentencesAnnotation.class)) {
+				String sentenceText = sentence.get(CoreAnnotations.TextAnnotation.class);
+				Tree tree = this.tree(sentenceText);
+				Sentence parsed = new Sentence(sentenceText, SemanticGraphFactory.generateCCProcessedDependencies(tree));
+				parsed.setInterrogative(this.interrogative(tree));
+				result.add(parsed);
+			}
+		}
+		return result;
+	}
+
+	private Tree tree(String sentence) {
+		if (this.cache == null) {
+			return this.parser.parse(sentence);
+		}
+		try {
+			Tree tree = this.cache.get(sentence);
+			if (tree != null) {
+				return tree;
+			}
+		} catch (Exception e) {
+			LOGGER.warn("{} failed to look up, parsing", sentence, e);
+		}
+		Tree tree = this.parser.parse(sentence);
+		try {
+			this.cache.put(sentence, tree);
+		} catch (Exception e) {
+			LOGGER.warn("{} failed to cache", sentence, e);
+		}
+		return tree;
+	}
+
+	private void parsePhrases(String sentence, List<Parse> result) {
+		for (String phrase : sentence.split("[:;!]")) {
+			try {
+				phrase = phrase.trim();
+				if (!phrase.isEmpty()) {
+					Tree tree = this.tree(phrase);
+					result.add(new Parse(this.interrogative(tree),
+							this.grammaticalStructureFactory.newGrammaticalStructure(tree)
+									.typedDependenciesCCprocessed(true)
+					));
+				}
+			} catch (Error e) {
+				LOGGER.warn("{} failed to parse, skipped", phrase, e);
+			}
+		}
+	}
+
+	private String cleanFileNamesAndMethods(String text) {
+		Matcher matcher = FILE_NAMES_AND_METHODS.matcher(text);
+		String result = text;
+		while (matcher.find()) {
+			if (matcher.group().contains(".")) {
+				result = result.replace(matcher.group(), matcher.group().replaceAll("\\.", "^"));
+			}
+		}
+		return result;
+	}
+
+	private String cleanThreeDots(String text) {
+		Matcher matcher = THREE_DOTS.matcher(text);
+		String result = text;
+		while (matcher.find()) {
+			result = result.replace(matcher.group(), matcher.group().replace("...", "."));
+		}
+		matcher = TWO_QUESTION_MARKS.matcher(result);
+		while (matcher.find()) {
+			result = result.replace(matcher.group(), matcher.group().replace("??", "?"));
+		}
+		return result;
+	}
+
+	private boolean interrogative(Tree tree) {
+		String string = tree.toString();
+		return string.contains("(SBARQ") || string.contains("(SQ");
+	}
+
+	public static class Parse {
+
+		public final boolean interrogative;
+		public final Collection<TypedDependency> dependencies;
+
+		public Parse(boolean interrogative, Collection<TypedDependency> dependencies) {
+			this.interrogative = interrogative;
+			this.dependencies = dependencies;
+		}
+
+	}
+
+}
@@ -0,0 +1,276 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.neon.model.Heuristic;
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Transforms sentences to the features of {@link InstancesBuilder#build()}: category labels, heuristic features as
+ * computed by {@link StringToHeuristicVector} and TF-IDF features as computed by the
+ * {@link weka.filters.unsupervised.attribute.FixedDictionaryStringToWordVector}, see {@link TfIdfVectorizer}.
+ * Heuristics and dictionary are read once, so a pipeline should be created once per language and reused. Safe to
+ * share across threads.
+ * <p>
+ * Heuristic features are nominal {0,1} attributes, as the shipped classifiers were trained on, or binary numeric
+ * attributes if the pipeline is numeric. Both have the same values, decision trees split them differently though, so
+ * classifiers only accept the kind they were trained on.
+ */
+public class FeaturePipeline {
+
+	/**
+	 * Sentences vectorized per task in parallel, parsing takes long enough to balance the load on small chunks.
+	 */
+	private static final int CHUNK_SIZE = 16;
+	private final List<String> categories;
+	private final boolean numeric;
+	private final ParserPool parsers;
+	private final HeuristicMatcher matcher;
+	private final List<String> featureNames;
+	/**
+	 * Index of the heuristic feature for each heuristic, heuristics with the same category and text share it.
+	 */
+	private final int[] features;
+	private final TfIdfVectorizer dictionary;
+	private final Instances outputFormat;
+
+	public FeaturePipeline(List<String> categories, File heuristics, File dictionary) throws Exception {
+		this(categories, heuristics, dictionary, ParserPool.getInstance());
+	}
+
+	public FeaturePipeline(List<String> categories, File heuristics, File dictionary, ParserPool parsers)
+			throws Exception {
+		this(categories,
+				HeuristicsXml.read(read(heuristics)),
+				new String(read(dictionary), StandardCharsets.UTF_8),
+				parsers
+		);
+	}
+
+	/**
+	 * @param heuristics as read by {@link HeuristicsXml}
+	 * @param dictionary as read by {@link TfIdfVectorizer}
+	 */
+	public FeaturePipeline(List<String> categories, List<Heuristic> heuristics, String dictionary, ParserPool parsers)
+			throws Exception {
+		this(categories, heuristics, dictionary, parsers, false);
+	}
+
+	/**
+	 * @param heuristics as read by {@link HeuristicsXml}
+	 * @param dictionary as read by {@link TfIdfVectorizer}
+	 * @param numeric    whether heuristic features are binary numeric attributes instead of nominal {0,1} ones
+	 */
+	public FeaturePipeline(
+			List<String> categories, List<Heuristic> heuristics, String dictionary, ParserPool parsers, boolean numeric
+	) throws Exception {
+		super();
+		this.categories = categories;
+		this.numeric = numeric;
+		this.parsers = parsers;
+		this.matcher = new HeuristicMatcher(heuristics);
+		this.featureNames = this.featureNames(this.matcher.getHeuristics());
+		Map<String, Integer> indices = new HashMap<>();
+		for (int i = 0; i < this.featureNames.size(); i = i + 1) {
+			indices.put(this.featureNames.get(i), i);
+		}
+		this.features = this.matcher.getHeuristics()
+				.stream()
+				.mapToInt(h -> indices.get(this.featureName(category(this.categories, h.getSentence_class()),
+						h.getText()
+				)))
+				.toArray();
+		this.dictionary = new TfIdfVectorizer(dictionary);
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		for (String category : this.categories) {
+			attributes.add(new Attribute(this.categoryName(category), List.of("0", "1")));
+		}
+		for (String name : this.featureNames) {
+			attributes.add(this.numeric ? new Attribute(name) : new Attribute(name, List.of("0", "1")));
+		}
+		for (String word : this.dictionary.getWords()) {
+			attributes.add(new Attribute(TfIdfVectorizer.PREFIX + word));
+		}
+		this.outputFormat = new Instances("dataset", attributes, 0);
+	}
+
+	public List<String> getCategories() {
+		return this.categories;
+	}
+
+	/**
+	 * @return the header of vectorized instances, without instances
+	 */
+	public Instances getOutputFormat() {
+		return new Instances(this.outputFormat, 0);
+	}
+
+	/**
+	 * @param sentences preprocessed sentences, labelled with no category
+	 */
+	public Instances vectorize(List<String> sentences) throws Exception {
+		Instances instances = new Instances(this.outputFormat, sentences.size());
+		for (String sentence : sentences) {
+			instances.add(this.vectorize(instances, new double[this.categories.size()], 1, sentence));
+		}
+		return instances;
+	}
+
+	/**
+	 * @param texts instances with the category attributes followed by the "text" attribute, as built by
+	 *              {@link InstancesBuilder}
+	 */
+	public Instances vectorize(Instances texts) throws Exception {
+		Instances instances = new Instances(this.outputFormat, texts.numInstances());
+		instances.setRelationName(texts.relationName());
+		for (Instance instance : texts) {
+			instances.add(this.vectorize(instances, texts, instance));
+		}
+		return instances;
+	}
+
+	/**
+	 * Vectorizes chunks of the texts in parallel, the result equals the one of {@link #vectorize(Instances)}.
+	 *
+	 * @param executor runs the chunks, the caller remains responsible for shutting it down
+	 */
+	public Instances vectorize(Instances texts, ExecutorService executor) throws Exception {
+		Instances instances = new Instances(this.outputFormat, texts.numInstances());
+		instances.setRelationName(texts.relationName());
+		Instance[] vectorized = new Instance[texts.numInstances()];
+		List<Callable<Void>> chunks = new ArrayList<>();
+		for (int start = 0; start < vectorized.length; start = start + CHUNK_SIZE) {
+			int from = start;
+			int to = Math.min(start + CHUNK_SIZE, vectorized.length);
+			chunks.add(() -> {
+				for (int i = from; i < to; i = i + 1) {
+					vectorized[i] = this.vectorize(instances, texts, texts.instance(i));
+				}
+				return null;
+			});
+		}
+		for (Future<Void> chunk : executor.invokeAll(chunks)) {
+			try {
+				chunk.get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+		}
+		// instances are added in their original order
+		for (Instance instance : vectorized) {
+			instances.add(instance);
+		}
+		return instances;
+	}
+
+	private Instance vectorize(Instances dataset, Instances texts, Instance text) throws Exception {
+		double[] labels = new double[this.categories.size()];
+		for (int i = 0; i < labels.length; i = i + 1) {
+			labels[i] = text.value(texts.attribute(this.categoryName(this.categories.get(i))));
+		}
+		return this.vectorize(dataset, labels, text.weight(), text.stringValue(texts.attribute("text")));
+	}
+
+	private Instance vectorize(Instances dataset, double[] labels, double weight, String sentence) throws Exception {
+		BitSet heuristics = new BitSet(this.featureNames.size());
+		this.matcher.match(this.parsers.parse(sentence))
+				.stream()
+				.forEach(i -> heuristics.set(this.features[i]));
+		TfIdfVectorizer.Terms words = this.dictionary.vectorize(sentence);
+		int n = 0;
+		for (double label : labels) {
+			if (label != 0) {
+				n = n + 1;
+			}
+		}
+		int[] indices = new int[n + heuristics.cardinality() + words.size()];
+		double[] values = new double[indices.length];
+		int i = 0;
+		for (int j = 0; j < labels.length; j = j + 1) {
+			if (labels[j] != 0) {
+				indices[i] = j;
+				values[i] = labels[j];
+				i = i + 1;
+			}
+		}
+		int offset = labels.length;
+		for (int j = heuristics.nextSetBit(0); j >= 0; j = heuristics.nextSetBit(j + 1)) {
+			indices[i] = offset + j;
+			values[i] = 1;
+			i = i + 1;
+		}
+		offset = offset + this.featureNames.size();
+		for (int j = 0; j < words.size(); j = j + 1) {
+			indices[i] = offset + words.index(j);
+			values[i] = words.weight(j);
+			i = i + 1;
+		}
+		SparseInstance instance = new SparseInstance(weight, values, indices, dataset.numAttributes());
+		instance.setDataset(dataset);
+		return instance;
+	}
+
+	private static byte[] read(File file) throws IOException {
+		try {
+			return Files.readAllBytes(file.toPath());
+		} catch (IOException e) {
+			throw new IOException(String.format("Failed to read %s", file), e);
+		}
+	}
+
+	private List<String> featureNames(List<Heuristic> heuristics) {
+		return heuristics.stream()
+				.collect(Collectors.groupingBy(Heuristic::getText,
+						Collectors.mapping(h -> category(this.categories, h.getSentence_class()), Collectors.toSet())
+				))
+				.entrySet()
+				.stream()
+				.flatMap(e -> e.getValue().stream().map(c -> this.featureName(c, e.getKey())))
+				.collect(Collectors.toSet())
+				.stream()
+				.sorted()
+				.collect(Collectors.toList());
+	}
+
+	private String categoryName(String category) {
+		return String.format("category-%s", category);
+	}
+
+	/**
+	 * @return "heuristic-[category]-[heuristic]"
+	 */
+	private String featureName(String category, String heuristic) {
+		return String.format("heuristic-%s-%s", category, heuristic);
+	}
+
+	/**
+	 * Finds the category matching the heuristic class. As NEON processes labels, normalization is required.
+	 */
+	static String category(List<String> categories, String heuristicClass) {
+		return categories.stream()
+				.filter(c -> normalize(c).equals(normalize(heuristicClass)))
+				.findFirst()
+				.get();
+	}
+
+	private static String normalize(String s) {
+		return s.toLowerCase().replaceAll("[^a-z0-9]", "");
+	}
+
+}
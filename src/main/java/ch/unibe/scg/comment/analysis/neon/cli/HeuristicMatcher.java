@@ -0,0 +1,278 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import edu.stanford.nlp.process.Morphology;
+import edu.stanford.nlp.trees.TreeGraphNode;
+import edu.stanford.nlp.trees.TypedDependency;
+import org.neon.model.Condition;
+import org.neon.model.Heuristic;
+import org.neon.model.Term;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Matches heuristics on parsed sentences like NEON's {@link org.neon.engine.Classifier}, but on heuristics read once
+ * instead of for every sentence. Safe to share across threads.
+ * <p>
+ * A heuristic only matches if its first condition matches, the heuristics are thus indexed by the relation of their
+ * first condition and, if it requires tokens, by the lemmas it accepts. Matching walks the dependencies of a sentence
+ * once to collect the candidates from the index and evaluates only those, so it scales with the size of the sentence
+ * rather than with the number of heuristics.
+ */
+public class HeuristicMatcher {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(HeuristicMatcher.class);
+	private final List<Heuristic> heuristics;
+	/**
+	 * Index of the heuristics by the relation of their first condition.
+	 */
+	private final Map<String, Relation> relations;
+	/**
+	 * Heuristics that cannot be indexed, they are candidates for every sentence.
+	 */
+	private final BitSet unindexed;
+
+	public HeuristicMatcher(List<Heuristic> heuristics) {
+		super();
+		this.heuristics = heuristics;
+		this.relations = new HashMap<>();
+		this.unindexed = new BitSet(heuristics.size());
+		for (int i = 0; i < heuristics.size(); i = i + 1) {
+			this.index(i, heuristics.get(i));
+		}
+	}
+
+	public List<Heuristic> getHeuristics() {
+		return this.heuristics;
+	}
+
+	/**
+	 * @return the indices of the heuristics matching any of the sentences
+	 */
+	public BitSet match(List<DependencyParser.Parse> sentences) {
+		BitSet matched = new BitSet(this.heuristics.size());
+		for (DependencyParser.Parse sentence : sentences) {
+			matched.or(this.match(sentence));
+		}
+		return matched;
+	}
+
+	/**
+	 * @return the indices of the heuristics matching the sentence, none if any heuristic fails to process
+	 */
+	public BitSet match(DependencyParser.Parse sentence) {
+		BitSet matched = new BitSet(this.heuristics.size());
+		try {
+			Sentence s = new Sentence(sentence);
+			BitSet candidates = this.candidates(s);
+			for (int i = candidates.nextSetBit(0); i >= 0; i = candidates.nextSetBit(i + 1)) {
+				if (s.matches(this.heuristics.get(i))) {
+					matched.set(i);
+				}
+			}
+		} catch (Exception e) {
+			LOGGER.warn("heuristics failed to process", e);
+			matched.clear();
+		}
+		return matched;
+	}
+
+	/**
+	 * @return the heuristics whose first condition may match the sentence
+	 */
+	private BitSet candidates(Sentence sentence) {
+		BitSet candidates = (BitSet) this.unindexed.clone();
+		for (Map.Entry<String, List<TypedDependency>> dependencies : sentence.dependencies.entrySet()) {
+			Relation relation = this.relations.get(dependencies.getKey());
+			if (relation == null) {
+				continue;
+			}
+			candidates.or(relation.unindexed);
+			for (TypedDependency dependency : dependencies.getValue()) {
+				if (!relation.governors.isEmpty()) {
+					relation.governors.candidates(sentence.lemma(dependency.gov(), true), candidates);
+				}
+				if (!relation.dependents.isEmpty()) {
+					relation.dependents.candidates(sentence.lemma(dependency.dep(), false), candidates);
+				}
+			}
+		}
+		return candidates;
+	}
+
+	private void index(int i, Heuristic heuristic) {
+		if (heuristic.getSentence_type() == null || heuristic.getConditions().isEmpty()) {
+			// processing fails or depends on the sentence type only
+			this.unindexed.set(i);
+			return;
+		}
+		Condition condition = heuristic.getConditions().get(0);
+		Term first = condition.getFirstTerm();
+		Term last = condition.getLastTerm();
+		if (first.getChild_type() == null || last.isTokensType() && last.getTokens() == null) {
+			this.unindexed.set(i);
+			return;
+		}
+		Relation relation = this.relations.computeIfAbsent(first.getTd_type(), k -> new Relation());
+		if (!last.isTokensType() || last.getTokens().trim().startsWith("\"regex:")) {
+			// pairs of dependencies and regular expressions are evaluated whenever the relation occurs
+			relation.unindexed.set(i);
+			return;
+		}
+		Lemmas lemmas = first.getChild_type().equals("gov()") ? relation.governors : relation.dependents;
+		lemmas.all.set(i);
+		// NEON matches lemmas by searching " [lemma] " in the tokens, which are enclosed in spaces
+		for (String token : last.getTokens().toLowerCase().replaceAll("\"", "").split(" ")) {
+			if (!token.isEmpty()) {
+				lemmas.lemmas.computeIfAbsent(token, k -> new BitSet()).set(i);
+			}
+		}
+	}
+
+	private static class Relation {
+
+		private final BitSet unindexed = new BitSet();
+		private final Lemmas governors = new Lemmas();
+		private final Lemmas dependents = new Lemmas();
+
+	}
+
+	/**
+	 * Heuristics whose first condition requires the governors or dependents of a relation to have certain lemmas.
+	 */
+	private static class Lemmas {
+
+		private final Map<String, BitSet> lemmas = new HashMap<>();
+		private final BitSet all = new BitSet();
+
+		private boolean isEmpty() {
+			return this.all.isEmpty();
+		}
+
+		private void candidates(String lemma, BitSet candidates) {
+			if (lemma.isEmpty() || lemma.contains(" ")) {
+				// such lemmas are not tokens, but may still be found in the tokens
+				candidates.or(this.all);
+				return;
+			}
+			BitSet heuristics = this.lemmas.get(lemma);
+			if (heuristics != null) {
+				candidates.or(heuristics);
+			}
+		}
+
+	}
+
+	/**
+	 * State of matching a single sentence, {@link Morphology} is not thread-safe.
+	 */
+	private static class Sentence {
+
+		private final Morphology morphology;
+		private final boolean interrogative;
+		private final Map<String, List<TypedDependency>> dependencies;
+		private final Map<String, String> lemmas;
+
+		private Sentence(DependencyParser.Parse parse) {
+			this.morphology = new Morphology();
+			this.interrogative = parse.interrogative;
+			this.dependencies = new HashMap<>();
+			for (TypedDependency dependency : parse.dependencies) {
+				this.dependencies.computeIfAbsent(dependency.reln().toString(), k -> new ArrayList<>()).add(dependency);
+			}
+			this.lemmas = new HashMap<>();
+		}
+
+		private boolean matches(Heuristic heuristic) {
+			String type = heuristic.getSentence_type();
+			if (!(type.equalsIgnoreCase("interrogative") && this.interrogative
+					|| type.equalsIgnoreCase("declarative") && !this.interrogative || type.equalsIgnoreCase("all"))) {
+				return false;
+			}
+			Iterator<Condition> conditions = heuristic.getConditions().iterator();
+			List<TypedDependency> dependencies = this.match(conditions.next(), null);
+			List<TypedDependency> negated = new ArrayList<>();
+			while (conditions.hasNext() && !dependencies.isEmpty()) {
+				Condition condition = conditions.next();
+				if (condition.isNegative()) {
+					negated = this.match(condition, dependencies);
+					if (!negated.isEmpty()) {
+						dependencies = negated;
+					}
+				} else {
+					dependencies = this.match(condition, dependencies);
+				}
+			}
+			return !dependencies.isEmpty() && negated.isEmpty();
+		}
+
+		/**
+		 * @param previous the dependencies matched by the previous condition, null for the first condition
+		 */
+		private List<TypedDependency> match(Condition condition, List<TypedDependency> previous) {
+			Term first = condition.getFirstTerm();
+			Term last = condition.getLastTerm();
+			List<TypedDependency> result = new ArrayList<>();
+			if (last.isTokensType()) {
+				String tokens = last.getTokens();
+				if (!tokens.trim().startsWith("\"regex:")) {
+					tokens = tokens.toLowerCase();
+				}
+				tokens = tokens.replaceAll("\"", "") + " ";
+				for (TypedDependency dependency : previous == null ? this.dependencies(first) : previous) {
+					if (this.matches(tokens, dependency, first)) {
+						result.add(dependency);
+					}
+				}
+				return result;
+			}
+			for (TypedDependency dependency : previous == null ? this.dependencies(first) : previous) {
+				for (TypedDependency other : this.dependencies(last)) {
+					if (!this.word(dependency, first).equals(this.word(other, last)) || dependency.equals(other)) {
+						continue;
+					}
+					// NEON keeps the later dependency for negative governor-dependent pairs after the first condition
+					boolean quirk = previous != null && this.isGovernor(first) && !this.isGovernor(last);
+					result.add(condition.isNegative() && !quirk ? dependency : other);
+				}
+			}
+			return result;
+		}
+
+		private boolean matches(String tokens, TypedDependency dependency, Term term) {
+			TreeGraphNode word = this.word(dependency, term);
+			if (tokens.trim().startsWith("regex:")) {
+				return word.nodeString().matches(tokens.trim().substring(6).trim());
+			}
+			return tokens.contains(" " + this.lemma(word, this.isGovernor(term)) + " ");
+		}
+
+		/**
+		 * NEON lowercases the lemmas of governors only.
+		 */
+		private String lemma(TreeGraphNode word, boolean governor) {
+			String lemma = this.lemmas.computeIfAbsent(word.nodeString().toLowerCase(), this.morphology::stem);
+			return governor ? lemma.toLowerCase() : lemma;
+		}
+
+		private List<TypedDependency> dependencies(Term term) {
+			return this.dependencies.getOrDefault(term.getTd_type(), List.of());
+		}
+
+		private TreeGraphNode word(TypedDependency dependency, Term term) {
+			return this.isGovernor(term) ? dependency.gov() : dependency.dep();
+		}
+
+		private boolean isGovernor(Term term) {
+			return term.getChild_type().equals("gov()");
+		}
+
+	}
+
+}
@@ -0,0 +1,173 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.neon.model.Condition;
+import org.neon.model.Heuristic;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.ErrorHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.SAXParseException;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.transform.OutputKeys;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+import javax.xml.transform.dom.DOMSource;
+import javax.xml.transform.stream.StreamResult;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reads and writes heuristics in the XML format of NEON's {@link org.neon.engine.XMLReader} and
+ * {@link org.neon.pathsFinder.engine.XMLWriter}, but from and to memory instead of files. Malformed XML raises an
+ * {@link IOException} instead of exiting the process.
+ */
+public class HeuristicsXml {
+
+	private HeuristicsXml() {
+		super();
+	}
+
+	public static ArrayList<Heuristic> read(byte[] bytes) throws IOException {
+		return read(new ByteArrayInputStream(bytes));
+	}
+
+	public static ArrayList<Heuristic> read(InputStream input) throws IOException {
+		Document document;
+		try {
+			document = builder().parse(input);
+		} catch (SAXException e) {
+			throw new IOException("Failed to read heuristics", e);
+		}
+		document.getDocumentElement().normalize();
+		ArrayList<Heuristic> heuristics = new ArrayList<>();
+		NodeList nodes = document.getElementsByTagName("NLP_heuristic");
+		for (int i = 0; i < nodes.getLength(); i = i + 1) {
+			if (nodes.item(i).getNodeType() != Node.ELEMENT_NODE) {
+				continue;
+			}
+			Element element = (Element) nodes.item(i);
+			Heuristic heuristic = new Heuristic();
+			heuristic.setType(element.getElementsByTagName("type").item(0).getTextContent());
+			heuristic.setText(element.getElementsByTagName("text").item(0).getTextContent());
+			Node sentence = element.getElementsByTagName("sentence").item(0);
+			heuristic.setSentence_type(sentence == null ? "all" : ((Element) sentence).getAttribute("type"));
+			ArrayList<Condition> conditions = new ArrayList<>();
+			NodeList children = element.getElementsByTagName("conditions").item(0).getChildNodes();
+			for (int j = 0; j < children.getLength(); j = j + 1) {
+				Node child = children.item(j);
+				if (child.getNodeType() == Node.ELEMENT_NODE && "condition".equals(child.getNodeName())) {
+					conditions.add(condition(child.getTextContent().split("=")));
+				}
+			}
+			heuristic.setConditions(conditions);
+			heuristic.setSentence_class(element.getElementsByTagName("sentence_class").item(0).getTextContent());
+			heuristics.add(heuristic);
+		}
+		return heuristics;
+	}
+
+	public static byte[] write(List<Heuristic> heuristics) throws IOException {
+		Document document = builder().newDocument();
+		Element root = document.createElement("heuristics");
+		document.appendChild(root);
+		for (Heuristic heuristic : heuristics) {
+			Element element = document.createElement("NLP_heuristic");
+			root.appendChild(element);
+			if (heuristic.getSentence_type() != null && !heuristic.getSentence_type().isEmpty()) {
+				Element sentence = document.createElement("sentence");
+				sentence.setAttribute("type", heuristic.getSentence_type());
+				element.appendChild(sentence);
+			}
+			element.appendChild(element(document, "type", heuristic.getType()));
+			element.appendChild(element(document, "text", heuristic.getText()));
+			Element conditions = document.createElement("conditions");
+			element.appendChild(conditions);
+			for (Condition condition : heuristic.getConditions()) {
+				conditions.appendChild(element(document, "condition", condition.getConditionString()));
+			}
+			element.appendChild(element(document, "sentence_class", heuristic.getSentence_class()));
+		}
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try {
+			Transformer transformer = TransformerFactory.newInstance().newTransformer();
+			transformer.setOutputProperty(OutputKeys.INDENT, "yes");
+			transformer.transform(new DOMSource(document), new StreamResult(output));
+		} catch (TransformerException e) {
+			throw new IOException("Failed to write heuristics", e);
+		}
+		return output.toByteArray();
+	}
+
+	/**
+	 * @param parts "[not:][relation].[term]" and either "[relation].governor|dependent" or tokens
+	 */
+	private static Condition condition(String[] parts) {
+		for (int i = 0; i < parts.length; i = i + 1) {
+			parts[i] = parts[i].trim();
+		}
+		Condition condition = new Condition();
+		condition.setConditionString(parts[0] + "=" + parts[1]);
+		String first = parts[0];
+		condition.setNegative(first.startsWith("not:"));
+		if (condition.isNegative()) {
+			first = first.substring("not:".length());
+		}
+		int dot = first.indexOf('.');
+		condition.getFirstTerm().setTd_type(first.substring(0, dot));
+		condition.getFirstTerm().setChild_type(first.substring(dot + 1));
+		String last = parts[1];
+		if (last.contains(".governor") || last.contains(".dependent")) {
+			dot = last.indexOf('.');
+			condition.getLastTerm().setTd_type(last.substring(0, dot));
+			condition.getLastTerm().setChild_type(last.substring(dot + 1));
+			condition.getLastTerm().setTokensType(false);
+		} else {
+			condition.getLastTerm().setTokens(last);
+			condition.getLastTerm().setTokensType(true);
+		}
+		return condition;
+	}
+
+	private static Element element(Document document, String name, String text) {
+		Element element = document.createElement(name);
+		element.appendChild(document.createTextNode(text));
+		return element;
+	}
+
+	private static DocumentBuilder builder() throws IOException {
+		try {
+			DocumentBuilder builder = DocumentBuilderFactory.newInstance().newDocumentBuilder();
+			builder.setErrorHandler(new ErrorHandler() {
+
+				@Override
+				public void warning(SAXParseException e) {
+				}
+
+				@Override
+				public void error(SAXParseException e) throws SAXException {
+					throw e;
+				}
+
+				@Override
+				public void fatalError(SAXParseException e) throws SAXException {
+					throw e;
+				}
+
+			});
+			return builder;
+		} catch (ParserConfigurationException e) {
+			throw new IOException(e);
+		}
+	}
+
+}
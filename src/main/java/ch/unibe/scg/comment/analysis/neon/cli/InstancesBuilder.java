@@ -1,36 +1,41 @@
 package ch.unibe.scg.comment.analysis.neon.cli;
 
 import weka.core.Attribute;
-import weka.core.DictionaryBuilder;
+import weka.core.Instance;
 import weka.core.Instances;
 import weka.core.SparseInstance;
 import weka.core.converters.ArffLoader;
 import weka.core.converters.ArffSaver;
-import weka.core.stemmers.IteratedLovinsStemmer;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.FixedDictionaryStringToWordVector;
 
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.IOException;
-import java.lang.reflect.Field;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
 
 public class InstancesBuilder {
 
 	private final List<String> categories;
-	private final File heuristics;
-	private final File dictionary;
+	private final FeaturePipeline pipeline;
 	private final Instances instances;
 
-	public InstancesBuilder(String name, List<String> categories, File heuristics, File dictionary) {
+	public InstancesBuilder(String name, List<String> categories, File heuristics, File dictionary) throws Exception {
+		this(name, new FeaturePipeline(categories, heuristics, dictionary));
+	}
+
+	/**
+	 * @param pipeline may be shared across builders of the same language
+	 */
+	public InstancesBuilder(String name, FeaturePipeline pipeline) {
 		super();
-		this.categories = categories;
-		this.heuristics = heuristics;
-		this.dictionary = dictionary;
+		this.categories = pipeline.getCategories();
+		this.pipeline = pipeline;
 		ArrayList<Attribute> attributes = new ArrayList<>();
 		// add category labels first
 		for (String category : this.categories) {
@@ -42,20 +47,68 @@ public class InstancesBuilder {
 	}
 
 	public static Instances load(byte[] bytes) throws IOException {
+		return load(ByteBuffer.wrap(bytes));
+	}
+
+	/**
+	 * @param bytes ARFF, read from its position without copying
+	 */
+	public static Instances load(ByteBuffer bytes) throws IOException {
 		ArffLoader loader = new ArffLoader();
-		Path path = Files.createTempFile("dataset", ".arff");
-		Files.write(path, bytes);
-		loader.setFile(path.toFile());
+		loader.setSource(new ByteBufferInputStream(bytes));
 		return loader.getDataSet();
 	}
 
+	/**
+	 * Reads the instances one at a time, so that a dataset can be processed without holding all of its instances. Like
+	 * for {@link ArffLoader#getNextInstance(Instances)}, string values of an instance are only valid until the next
+	 * instance is read.
+	 *
+	 * @param bytes ARFF, read from its position without copying
+	 * @return the instances, each with the header as its dataset, the iterator throws {@link UncheckedIOException}
+	 */
+	public static Iterator<Instance> read(ByteBuffer bytes) throws IOException {
+		ArffLoader loader = new ArffLoader();
+		loader.setSource(new ByteBufferInputStream(bytes));
+		Instances structure = loader.getStructure();
+		return new Iterator<>() {
+
+			private Instance next;
+			private boolean done;
+
+			@Override
+			public boolean hasNext() {
+				if (this.next == null && !this.done) {
+					try {
+						this.next = loader.getNextInstance(structure);
+					} catch (IOException e) {
+						throw new UncheckedIOException(e);
+					}
+					this.done = this.next == null;
+				}
+				return this.next != null;
+			}
+
+			@Override
+			public Instance next() {
+				if (!this.hasNext()) {
+					throw new NoSuchElementException();
+				}
+				Instance instance = this.next;
+				this.next = null;
+				return instance;
+			}
+
+		};
+	}
+
 	public static byte[] save(Instances instances) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
 		ArffSaver saver = new ArffSaver();
-		Path path = Files.createTempFile("dataset", ".arff");
-		saver.setFile(path.toFile());
 		saver.setInstances(instances);
+		saver.setDestination(output);
 		saver.writeBatch();
-		return Files.readAllBytes(path);
+		return output.toByteArray();
 	}
 
 	public static String preprocess(String s) {
@@ -113,56 +166,18 @@ public class InstancesBuilder {
 	}
 
 	public Instances build() throws Exception {
-		Instances instances = this.tfidf(this.heuristic(this.instances));
-		instances.setRelationName(this.instances.relationName());
-		return instances;
-	}
-
-	private String categoryName(String category) {
-		return String.format("category-%s", category);
+		return this.pipeline.vectorize(this.instances);
 	}
 
 	/**
-	 * Transforms instances from text to heuristic features.
-	 *
-	 * @param instances Must have a "text" attribute
-	 * @return
-	 * @throws Exception
+	 * Same as {@link #build()}, but vectorizes the sentences in parallel on the executor.
 	 */
-	private Instances heuristic(Instances instances) throws Exception {
-		StringToHeuristicVector filter = new StringToHeuristicVector();
-		filter.setCategories(this.categories);
-		filter.setHeuristics(this.heuristics);
-		filter.setInputFormat(instances);
-		return Filter.useFilter(instances, filter);
+	public Instances build(ExecutorService executor) throws Exception {
+		return this.pipeline.vectorize(this.instances, executor);
 	}
 
-	/**
-	 * Transforms instances from text to TF-IDF features.
-	 *
-	 * @param instances Must have a "text" attribute
-	 * @return
-	 * @throws Exception
-	 */
-	private Instances tfidf(Instances instances) throws Exception {
-		int i = instances.attribute("text").index() + 1;
-		FixedDictionaryStringToWordVector filter = new FixedDictionaryStringToWordVector();
-		filter.setLowerCaseTokens(true);
-		filter.setStemmer(new IteratedLovinsStemmer());
-		filter.setOutputWordCounts(true);
-		filter.setTFTransform(true);
-		filter.setIDFTransform(true);
-		filter.setAttributeNamePrefix("tfidf-");
-		filter.setAttributeIndices(String.format("%d-%d", i, i));
-		filter.setDictionaryFile(this.dictionary);
-		filter.setInputFormat(instances);
-		// fix broken m_count in dictionary build, any positive constant will work
-		Field mCount = DictionaryBuilder.class.getDeclaredField("m_count");
-		mCount.setAccessible(true);
-		Field mVectorizer = FixedDictionaryStringToWordVector.class.getDeclaredField("m_vectorizer");
-		mVectorizer.setAccessible(true);
-		mCount.set(mVectorizer.get(filter), 1000);
-		return Filter.useFilter(instances, filter);
+	private String categoryName(String category) {
+		return String.format("category-%s", category);
 	}
 
 }
@@ -2,6 +2,10 @@ package ch.unibe.scg.comment.analysis.neon.cli;
 
 import ch.unibe.scg.comment.analysis.neon.cli.task.T10BuildClassifiers;
 import ch.unibe.scg.comment.analysis.neon.cli.task.T11ImportClassifierOutputs;
+import ch.unibe.scg.comment.analysis.neon.cli.task.T13Serve;
+import ch.unibe.scg.comment.analysis.neon.cli.task.T14Scan;
+import ch.unibe.scg.comment.analysis.neon.cli.task.T15CompileClassifiers;
+import ch.unibe.scg.comment.analysis.neon.cli.task.T16BundleModels;
 import ch.unibe.scg.comment.analysis.neon.cli.task.T1Preprocess;
 import ch.unibe.scg.comment.analysis.neon.cli.task.T2SplitSentences;
 import ch.unibe.scg.comment.analysis.neon.cli.task.T3MapSentences;
@@ -22,6 +26,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.nio.file.Paths;
+import java.util.List;
 
 public class Main {
 
@@ -43,12 +48,60 @@ public class Main {
 				.required()
 				.hasArgs()
 				.valueSeparator(',')
-				.desc("task to perform, split by ',', [preprocess|split-sentences|map-sentences|partition|prepare-extractors|prepare-datasets]")
+				.desc("task to perform, split by ',', [preprocess|split-sentences|map-sentences|partition|prepare-extractors|prepare-datasets|serve|scan|compile-classifiers|bundle-models]")
+				.build());
+		options.addOption(Option.builder("p").longOpt("port").hasArg().desc("port to serve on, default 8080").build());
+		options.addOption(Option.builder("n")
+				.longOpt("threads")
+				.hasArg()
+				.desc("number of threads to serve with, default 4, or to prepare datasets and experiments "
+						+ "and scan with, default all cores")
+				.build());
+		options.addOption(Option.builder("r")
+				.longOpt("root")
+				.hasArg()
+				.desc("directory to scan, default working directory")
+				.build());
+		options.addOption(Option.builder("o")
+				.longOpt("output")
+				.hasArg()
+				.desc("file to write scanned labels to, default standard output")
+				.build());
+		options.addOption(Option.builder("f")
+				.longOpt("format")
+				.hasArg()
+				.desc("format of scanned labels [tsv|ndjson|binary], default tsv")
 				.build());
 		try {
 			CommandLine line = parser.parse(options, args);
 			String database = line.getOptionValue("database");
 			for (String task : line.getOptionValues("task")) {
+				if ("13-serve".equals(task)) {
+					// serves all data sources at once
+					LOGGER.info("Running {}...", task);
+					int threads = Integer.parseInt(line.getOptionValue("threads", "4"));
+					(new T13Serve(
+							List.of(line.getOptionValues("data")),
+							Integer.parseInt(line.getOptionValue("port", "8080")),
+							threads,
+							4 * threads
+					)).run();
+					continue;
+				}
+				if ("14-scan".equals(task)) {
+					// scans files of all data sources at once
+					LOGGER.info("Running {}...", task);
+					(new T14Scan(
+							List.of(line.getOptionValues("data")),
+							Paths.get(line.getOptionValue("root", System.getProperty("user.dir"))),
+							Integer.parseInt(line.getOptionValue("threads",
+									String.valueOf(Runtime.getRuntime().availableProcessors())
+							)),
+							line.hasOption("output") ? Paths.get(line.getOptionValue("output")) : null,
+							line.getOptionValue("format", "tsv")
+					)).run();
+					continue;
+				}
 				for (String data : line.getOptionValues("data")) {
 					LOGGER.info("Running {} on {}...", task, data);
 					if ("1-preprocess".equals(task)) {
@@ -62,7 +115,14 @@ public class Main {
 					} else if ("5-prepare-extractors".equals(task)) {
 						(new T5PrepareExtractors(database, data, 1000)).run();
 					} else if ("6-prepare-datasets".equals(task)) {
-						(new T6PrepareDatasets(database, data, 0)).run();
+						(new T6PrepareDatasets(
+								database,
+								data,
+								0,
+								Integer.parseInt(line.getOptionValue("threads",
+										String.valueOf(Runtime.getRuntime().availableProcessors())
+								))
+						)).run();
 					} else if ("7-prepare-experiments".equals(task)) {
 						(new T7PrepareExperiments(
 								database,
@@ -70,7 +130,10 @@ public class Main {
 								Paths.get(System.getProperty("user.dir"))
 										.resolve("data")
 										.resolve(data)
-										.resolve("experiment")
+										.resolve("experiment"),
+								Integer.parseInt(line.getOptionValue("threads",
+										String.valueOf(Runtime.getRuntime().availableProcessors())
+								))
 						)).run();
 					} else if ("8-run-experiments".equals(task)) {
 						(new T8RunExperiments(
@@ -108,6 +171,22 @@ public class Main {
 										.resolve(data)
 										.resolve("experiment")
 						)).run();
+					} else if ("15-compile-classifiers".equals(task)) {
+						(new T15CompileClassifiers(
+								data,
+								Paths.get(System.getProperty("user.dir"))
+										.resolve("src")
+										.resolve("main")
+										.resolve("resources")
+										.resolve("classifier")
+										.resolve(data),
+								Paths.get(System.getProperty("user.dir"))
+										.resolve("data")
+										.resolve(data)
+										.resolve("experiment")
+						)).run();
+					} else if ("16-bundle-models".equals(task)) {
+						(new T16BundleModels(data, Paths.get(System.getProperty("user.dir")).resolve("bundle"))).run();
 					} else {
 						throw new IllegalArgumentException("task option is unknown");
 					}
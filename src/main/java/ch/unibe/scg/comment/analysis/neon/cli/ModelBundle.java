@@ -0,0 +1,261 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * All models of a data source in a single file, mapped into memory and read section by section on first use, so
+ * that processes on the same host share the pages of the file instead of copying it into their heaps.
+ * <p>
+ * The file starts with the magic bytes "NEOB", the version 1, the data source, the model version and the manifest,
+ * the number of sections followed by name, offset, length and SHA-256 of each. The model version is the SHA-256 of
+ * the manifest, it changes with any section. Names and versions are written as modified UTF-8, see
+ * {@link DataOutputStream#writeUTF(String)}, numbers big-endian. A section is verified against its checksum on first
+ * use. Safe to share across threads.
+ */
+public class ModelBundle {
+
+	public static final int MAGIC = 0x4E454F42;
+	public static final int VERSION = 1;
+	private static final Map<String, ModelBundle> INSTANCES = new HashMap<>();
+	private final String data;
+	private final String version;
+	private final MappedByteBuffer buffer;
+	private final Map<String, Section> sections;
+
+	private ModelBundle(String data, String version, MappedByteBuffer buffer, Map<String, Section> sections) {
+		super();
+		this.data = data;
+		this.version = version;
+		this.buffer = buffer;
+		this.sections = sections;
+	}
+
+	/**
+	 * @return the bundle of the data source shared by the whole process, "[data].bundle" in the directory of the
+	 * system property "model.bundles", null if the directory is not set
+	 */
+	public static ModelBundle getInstance(String data) throws IOException {
+		String directory = System.getProperty("model.bundles");
+		if (directory == null) {
+			return null;
+		}
+		synchronized (INSTANCES) {
+			ModelBundle bundle = INSTANCES.get(data);
+			if (bundle == null) {
+				bundle = open(Paths.get(directory).resolve(String.format("%s.bundle", data)));
+				if (!bundle.data.equals(data)) {
+					throw new IOException(String.format("bundle of %s is of %s", data, bundle.data));
+				}
+				INSTANCES.put(data, bundle);
+			}
+			return bundle;
+		}
+	}
+
+	public static ModelBundle open(Path path) throws IOException {
+		MappedByteBuffer buffer;
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		ByteBuffer header = buffer.duplicate();
+		if (header.getInt() != MAGIC || header.get() != VERSION) {
+			throw new IOException(String.format("%s is not a model bundle of version %d", path, VERSION));
+		}
+		String data = readUTF(header);
+		String version = readUTF(header);
+		int count = header.getInt();
+		Map<String, Section> sections = new LinkedHashMap<>();
+		for (int i = 0; i < count; i = i + 1) {
+			String name = readUTF(header);
+			long offset = header.getLong();
+			long length = header.getLong();
+			byte[] checksum = new byte[32];
+			header.get(checksum);
+			if (offset < 0 || length < 0 || offset + length > buffer.capacity()) {
+				throw new IOException(String.format("%s section %s is out of bounds", path, name));
+			}
+			sections.put(name, new Section((int) offset, (int) length, checksum));
+		}
+		return new ModelBundle(data, version, buffer, sections);
+	}
+
+	/**
+	 * @param sections content of each section by name, in order of the file
+	 */
+	public static void write(Path path, String data, Map<String, byte[]> sections) throws IOException {
+		Map<String, byte[]> checksums = new LinkedHashMap<>();
+		for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+			checksums.put(section.getKey(), sha256(section.getValue()));
+		}
+		// the length of the header does not depend on the offsets, so it is written twice, first to measure it
+		byte[] header = header(data, checksums, sections, 0);
+		header = header(data, checksums, sections, header.length);
+		try (OutputStream output = new BufferedOutputStream(Files.newOutputStream(path))) {
+			output.write(header);
+			for (byte[] section : sections.values()) {
+				output.write(section);
+			}
+		}
+	}
+
+	public String getData() {
+		return this.data;
+	}
+
+	/**
+	 * @return hash of the manifest, changes with the content of any section
+	 */
+	public String getVersion() {
+		return this.version;
+	}
+
+	public List<String> getNames() {
+		return List.copyOf(this.sections.keySet());
+	}
+
+	public boolean contains(String name) {
+		return this.sections.containsKey(name);
+	}
+
+	/**
+	 * @return length of the section in bytes, without reading it
+	 */
+	public int getLength(String name) throws IOException {
+		return this.section(name).length;
+	}
+
+	/**
+	 * @return SHA-256 of the section as listed in the manifest, without reading it
+	 */
+	public byte[] getChecksum(String name) throws IOException {
+		return this.section(name).checksum.clone();
+	}
+
+	/**
+	 * @return the section, read-only and backed by the mapped file, verified on first use
+	 */
+	public ByteBuffer get(String name) throws IOException {
+		Section section = this.section(name);
+		ByteBuffer slice = this.buffer.slice(section.offset, section.length).asReadOnlyBuffer();
+		synchronized (section) {
+			if (!section.verified) {
+				MessageDigest digest = sha256();
+				digest.update(slice.duplicate());
+				if (!Arrays.equals(digest.digest(), section.checksum)) {
+					throw new IOException(String.format("bundle of %s has a corrupt section %s", this.data, name));
+				}
+				section.verified = true;
+			}
+		}
+		return slice;
+	}
+
+	/**
+	 * @see #get(String)
+	 */
+	public InputStream stream(String name) throws IOException {
+		return new ByteBufferInputStream(this.get(name));
+	}
+
+	@Override
+	public String toString() {
+		return "ModelBundle{" + "data=" + this.data + ", version=" + this.version + ", sections="
+				+ this.sections.size() + ", size=" + this.buffer.capacity() + '}';
+	}
+
+	private Section section(String name) throws IOException {
+		Section section = this.sections.get(name);
+		if (section == null) {
+			throw new IOException(String.format("bundle of %s has no section %s", this.data, name));
+		}
+		return section;
+	}
+
+	private static byte[] header(
+			String data, Map<String, byte[]> checksums, Map<String, byte[]> sections, int length
+	) throws IOException {
+		ByteArrayOutputStream manifest = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(manifest);
+		output.writeInt(sections.size());
+		long offset = length;
+		for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+			output.writeUTF(section.getKey());
+			output.writeLong(offset);
+			output.writeLong(section.getValue().length);
+			output.write(checksums.get(section.getKey()));
+			offset = offset + section.getValue().length;
+		}
+		// the offsets depend on the header length, the version thus only on names, lengths and checksums
+		ByteArrayOutputStream versioned = new ByteArrayOutputStream();
+		DataOutputStream versionOutput = new DataOutputStream(versioned);
+		for (Map.Entry<String, byte[]> section : sections.entrySet()) {
+			versionOutput.writeUTF(section.getKey());
+			versionOutput.writeLong(section.getValue().length);
+			versionOutput.write(checksums.get(section.getKey()));
+		}
+		ByteArrayOutputStream header = new ByteArrayOutputStream();
+		output = new DataOutputStream(header);
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeUTF(data);
+		output.writeUTF(HexFormat.of().formatHex(sha256(versioned.toByteArray())));
+		manifest.writeTo(output);
+		return header.toByteArray();
+	}
+
+	private static String readUTF(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		// modified UTF-8 only differs for NUL and supplementary characters, which names do not contain
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private static byte[] sha256(byte[] bytes) {
+		return sha256().digest(bytes);
+	}
+
+	private static MessageDigest sha256() {
+		try {
+			return MessageDigest.getInstance("SHA-256");
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class Section {
+
+		private final int offset;
+		private final int length;
+		private final byte[] checksum;
+		private boolean verified;
+
+		private Section(int offset, int length, byte[] checksum) {
+			this.offset = offset;
+			this.length = length;
+			this.checksum = checksum;
+		}
+
+	}
+
+}
@@ -3,30 +3,27 @@ package ch.unibe.scg.comment.analysis.neon.cli;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
-import java.util.function.Function;
-import java.util.regex.MatchResult;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
 
 public class NormalizedString {
 
 	public final String original;
 	public final String normalized;
 	List<Change> changes;
+	private final OffsetMap offsets;
 
 	public NormalizedString(String original) {
 		this.original = original;
 		this.changes = new ArrayList<>();
 		this.normalized = this.normalize();
+		this.offsets = new OffsetMap(this.changes);
 	}
 
+	/**
+	 * Same as reverting all changes in reverse order, see {@link Change#revert(Range)}.
+	 */
 	public Range normalizedToOriginal(Range normalized) {
 		assert Range.of(this.normalized).includes(normalized);
-		for (int i = this.changes.size() - 1; i >= 0; i = i - 1) {
-			Change change = this.changes.get(i);
-			normalized = change.revert(normalized);
-		}
-		return normalized;
+		return this.offsets.revert(normalized);
 	}
 
 	protected String normalize() {
@@ -51,133 +48,399 @@ public class NormalizedString {
 		return normalized;
 	}
 
+	// "\r\n|\r" -> "\n"
 	protected String normalizeLineEnds(String original) {
-		return this.change(original, "\r\n|\r", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
-			return "\n";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			if (c == '\r') {
+				int end = i + 1 < original.length() && original.charAt(i + 1) == '\n' ? i + 2 : i + 1;
+				this.changes.add(new Change(new Range(result.length(), result.length() + end - i), 1));
+				result.append('\n');
+				i = end;
+			} else {
+				result.append(c);
+				i = i + 1;
+			}
+		}
+		return result.toString();
 	}
 
+	// "[^a-z0-9,.!? \n]+" -> " "
 	protected String reduceAlphabet(String original) {
-		return this.change(original, "[^a-z0-9,.!? \n]+", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
-			return " ";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			if (this.isAlphabet(original.charAt(i))) {
+				result.append(original.charAt(i));
+				i = i + 1;
+			} else {
+				int end = i + 1;
+				while (end < original.length() && !this.isAlphabet(original.charAt(end))) {
+					end = end + 1;
+				}
+				this.changes.add(new Change(new Range(result.length(), result.length() + end - i), 1));
+				result.append(' ');
+				i = end;
+			}
+		}
+		return result.toString();
 	}
 
+	// "([0-9]+)\\.([0-9]+)" -> "$1$2"
 	protected String reduceFloats(String original) {
-		return this.change(original, "([0-9]+)\\.([0-9]+)", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 0));
-			return "$1$2";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		for (int i = 0; i < original.length(); i = i + 1) {
+			char c = original.charAt(i);
+			if (c == '.' && result.length() > 0 && this.isDigit(result.charAt(result.length() - 1))
+					&& i + 1 < original.length() && this.isDigit(original.charAt(i + 1))) {
+				this.changes.add(new Change(new Range(result.length(), result.length() + 1), 0));
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
 	}
 
+	// " ( +)" -> " "
 	protected String reduceSpaces(String original) {
-		return this.change(original, " ( +)", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
-			return " ";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			int end = i + 1;
+			if (c == ' ') {
+				while (end < original.length() && original.charAt(end) == ' ') {
+					end = end + 1;
+				}
+				if (end - i > 1) {
+					this.changes.add(new Change(new Range(result.length(), result.length() + end - i), 1));
+				}
+			}
+			result.append(c);
+			i = end;
+		}
+		return result.toString();
 	}
 
+	// "^[ \n]+" -> ""
 	protected String trimStart(String original) {
-		return this.change(original, "^[ \n]+", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 0));
-			return "";
-		});
+		int end = 0;
+		while (end < original.length() && this.isBlank(original.charAt(end))) {
+			end = end + 1;
+		}
+		if (end == 0) {
+			return original;
+		}
+		this.changes.add(new Change(new Range(0, end), 0));
+		return original.substring(end);
 	}
 
+	// "[ \n]+$" -> ""
 	protected String trimEnd(String original) {
-		return this.change(original, "[ \n]+$", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 0));
-			return "";
-		});
+		int start = original.length();
+		while (start > 0 && this.isBlank(original.charAt(start - 1))) {
+			start = start - 1;
+		}
+		if (start == original.length()) {
+			return original;
+		}
+		this.changes.add(new Change(new Range(start, original.length()), 0));
+		return original.substring(0, start);
 	}
 
+	// "\n " -> "\n"
 	protected String reduceLineStarts(String original) {
-		return this.change(original, "\n ", result -> {
-			this.changes.add(new Change(new Range(result.start() + 1, result.end()), 0));
-			return "\n";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			result.append(c);
+			i = i + 1;
+			if (c == '\n') {
+				while (i < original.length() && original.charAt(i) == ' ') {
+					this.changes.add(new Change(new Range(result.length(), result.length() + 1), 0));
+					i = i + 1;
+				}
+			}
+		}
+		return result.toString();
 	}
 
+	// " \n" -> "\n"
 	protected String reduceLineEnds(String original) {
-		return this.change(original, " \n", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end() - 1), 0));
-			return "\n";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			int end = i + 1;
+			if (c == ' ') {
+				while (end < original.length() && original.charAt(end) == ' ') {
+					end = end + 1;
+				}
+				if (end < original.length() && original.charAt(end) == '\n') {
+					// the space closest to the line end is matched first
+					for (int j = end - i - 1; j >= 0; j = j - 1) {
+						this.changes.add(new Change(new Range(result.length() + j, result.length() + j + 1), 0));
+					}
+					i = end;
+					continue;
+				}
+			}
+			result.append(original, i, end);
+			i = end;
+		}
+		return result.toString();
 	}
 
+	// "\n\n(\n+)" -> "\n\n"
 	protected String reduceNewLines(String original) {
-		return this.change(original, "\n\n(\n+)", result -> {
-			this.changes.add(new Change(new Range(result.start(1), result.end(1)), 0));
-			return "\n\n";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			int end = i + 1;
+			if (c == '\n') {
+				while (end < original.length() && original.charAt(end) == '\n') {
+					end = end + 1;
+				}
+				if (end - i > 2) {
+					this.changes.add(new Change(new Range(result.length() + 2, result.length() + end - i), 0));
+					result.append("\n\n");
+					i = end;
+					continue;
+				}
+			}
+			result.append(original, i, end);
+			i = end;
+		}
+		return result.toString();
 	}
 
+	// "([^.!?\n])\n([^\n])" -> "$1 $2"
 	protected String joinLines(String original) {
-		return this.change(original, "([^.!?\n])\n([^\n])", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 1));
-			return "$1 $2";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		for (int i = 0; i < original.length(); i = i + 1) {
+			char c = original.charAt(i);
+			if (c == '\n' && result.length() > 0 && !this.isSentenceEnd(result.charAt(result.length() - 1))
+					&& result.charAt(result.length() - 1) != '\n' && i + 1 < original.length()
+					&& original.charAt(i + 1) != '\n') {
+				this.changes.add(new Change(new Range(result.length(), result.length() + 1), 1));
+				result.append(' ');
+			} else {
+				result.append(c);
+			}
+		}
+		return result.toString();
 	}
 
+	// " ?([.!?])[ .!?]+" -> "$1"
 	protected String normalizeSentenceEnds(String original) {
-		return this.change(original, " ?([.!?])[ .!?]+", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
-			return "$1";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			if (!this.isSentenceEndOrSpace(original.charAt(i))) {
+				result.append(original.charAt(i));
+				i = i + 1;
+				continue;
+			}
+			int end = i + 1;
+			while (end < original.length() && this.isSentenceEndOrSpace(original.charAt(end))) {
+				end = end + 1;
+			}
+			// the first position of the run that is followed by enough of it, at most one per run
+			int start = i;
+			while (start < end && !(this.isSentenceEnd(original.charAt(start)) && start + 1 < end
+					|| original.charAt(start) == ' ' && start + 2 < end && this.isSentenceEnd(original.charAt(
+					start + 1)))) {
+				start = start + 1;
+			}
+			result.append(original, i, start);
+			if (start < end) {
+				this.changes.add(new Change(new Range(result.length(), result.length() + end - start), 1));
+				result.append(original.charAt(start) == ' ' ? original.charAt(start + 1) : original.charAt(start));
+			}
+			i = end;
+		}
+		return result.toString();
 	}
 
+	// " ?,,+" -> ", "
 	protected String normalizeCommas(String original) {
-		return this.change(original, " ?,,+", result -> {
-			this.changes.add(new Change(new Range(result.start(), result.end()), 2));
-			return ", ";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			char c = original.charAt(i);
+			if (c != ',') {
+				result.append(c);
+				i = i + 1;
+				continue;
+			}
+			int start = result.length();
+			while (i < original.length() && original.charAt(i) == ',') {
+				result.append(',');
+				i = i + 1;
+			}
+			int end = result.length();
+			// the replaced comma may double a preceding one, which is matched next
+			while (end - start > 1) {
+				if (start > 0 && result.charAt(start - 1) == ' ') {
+					start = start - 1;
+				}
+				this.changes.add(new Change(new Range(start, end), 2));
+				result.replace(start, end, ", ");
+				end = start + 1;
+				while (start > 0 && result.charAt(start - 1) == ',') {
+					start = start - 1;
+				}
+			}
+		}
+		return result.toString();
 	}
 
+	// "([,.!?])([^ ])" -> "$1 $2"
 	protected String splitJoinedSentences(String original) {
-		return this.change(original, "([,.!?])([^ ])", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.end(1)), 1));
-			return "$1 $2";
-		});
+		StringBuilder result = new StringBuilder(original.length() + original.length() / 8);
+		for (int i = 0; i < original.length(); i = i + 1) {
+			char c = original.charAt(i);
+			result.append(c);
+			if ((c == ',' || this.isSentenceEnd(c)) && i + 1 < original.length() && original.charAt(i + 1) != ' ') {
+				this.changes.add(new Change(new Range(result.length(), result.length()), 1));
+				result.append(' ');
+			}
+		}
+		return result.toString();
 	}
 
+	// "(\n|^)([ .!?]+)" -> "$1"
 	protected String normalizeLineStarts(String original) {
-		return this.change(original, "(\n|^)([ .!?]+)", result -> {
-			this.changes.add(new Change(new Range(result.start(2), result.end(2)), 0));
-			return "$1";
-		});
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i <= original.length()) {
+			if (i == 0 || original.charAt(i - 1) == '\n') {
+				int end = i;
+				while (end < original.length() && this.isSentenceEndOrSpace(original.charAt(end))) {
+					end = end + 1;
+				}
+				if (end > i) {
+					this.changes.add(new Change(new Range(result.length(), result.length() + end - i), 0));
+					i = end;
+				}
+			}
+			if (i < original.length()) {
+				result.append(original.charAt(i));
+			}
+			i = i + 1;
+		}
+		return result.toString();
 	}
 
+	// "(^|[^a-z0-9])e\\.? ?g\\.? ?($|[^.a-z0-9])" -> "$1eg$2"
 	protected String normalizeEg(String original) {
-		return this.change(original, "(^|[^a-z0-9])e\\.? ?g\\.? ?($|[^.a-z0-9])", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 2));
-			return "$1eg$2";
-		});
+		return this.normalizeAbbreviation(original, "e", "g");
 	}
 
+	// "(^|[^a-z0-9])i\\.? ?e\\.? ?($|[^.a-z0-9])" -> "$1ie$2"
 	protected String normalizeIe(String original) {
-		return this.change(original, "(^|[^a-z0-9])i\\.? ?e\\.? ?($|[^.a-z0-9])", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 2));
-			return "$1ie$2";
-		});
+		return this.normalizeAbbreviation(original, "i", "e");
 	}
 
+	// "(^|[^a-z0-9])etc\\.? ?($|[^.a-z0-9])" -> "$1etc$2"
 	protected String normalizeEtc(String original) {
-		return this.change(original, "(^|[^a-z0-9])etc\\.? ?($|[^.a-z0-9])", result -> {
-			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 3));
-			return "$1etc$2";
-		});
+		return this.normalizeAbbreviation(original, "etc");
 	}
 
-	protected String change(String original, String regex, Function<MatchResult, String> replacer) {
-		Pattern pattern = Pattern.compile(regex);
-		Matcher matcher = pattern.matcher(original);
-		while (matcher.find()) {
-			original = matcher.replaceFirst(replacer);
-			matcher = pattern.matcher(original);
+	/**
+	 * Joins the parts of an abbreviation standing on its own, each part may be followed by a dot and a space. Already
+	 * joined abbreviations are left as they are.
+	 */
+	private String normalizeAbbreviation(String original, String... parts) {
+		String abbreviation = String.join("", parts);
+		StringBuilder result = new StringBuilder(original.length());
+		int i = 0;
+		while (i < original.length()) {
+			// "^" is preferred over a preceding character at the start
+			int start = i == 0 ? 0 : -1;
+			int end = start == 0 ? this.abbreviationEnd(original, 0, parts) : -1;
+			if (end == -1 && !this.isLetterOrDigit(original.charAt(i))) {
+				start = i + 1;
+				end = this.abbreviationEnd(original, start, parts);
+			}
+			if (end != -1 && end - start != abbreviation.length()) {
+				result.append(original, i, start);
+				this.changes.add(new Change(new Range(result.length(), result.length() + end - start),
+						abbreviation.length()
+				));
+				result.append(abbreviation);
+				i = end;
+			} else {
+				result.append(original.charAt(i));
+				i = i + 1;
+			}
 		}
-		return original;
+		return result.toString();
+	}
+
+	/**
+	 * @return end of the abbreviation starting at the argument, followed by the end or neither a dot nor a letter or
+	 * digit, -1 if there is none
+	 */
+	private int abbreviationEnd(String original, int start, String... parts) {
+		int i = start;
+		for (int j = 0; j < parts.length; j = j + 1) {
+			if (!original.startsWith(parts[j], i)) {
+				return -1;
+			}
+			i = i + parts[j].length();
+			if (i < original.length() && original.charAt(i) == '.') {
+				i = i + 1;
+			}
+			if (j < parts.length - 1 && i < original.length() && original.charAt(i) == ' ') {
+				i = i + 1;
+			}
+		}
+		// the last space is optional, it may be the required separator itself
+		if (i < original.length() && original.charAt(i) == ' ' && this.isAbbreviationEnd(original, i + 1)) {
+			return i + 1;
+		}
+		return this.isAbbreviationEnd(original, i) ? i : -1;
+	}
+
+	private boolean isAbbreviationEnd(String original, int i) {
+		return this.isEnd(original, i) || i < original.length() && original.charAt(i) != '.'
+				&& !this.isLetterOrDigit(original.charAt(i));
+	}
+
+	/**
+	 * @return whether "$" matches, which is also the case before a final line end
+	 */
+	private boolean isEnd(String original, int i) {
+		return i == original.length() || i == original.length() - 1 && original.charAt(i) == '\n';
+	}
+
+	private boolean isAlphabet(char c) {
+		return this.isLetterOrDigit(c) || c == ',' || c == ' ' || c == '\n' || this.isSentenceEnd(c);
+	}
+
+	private boolean isLetterOrDigit(char c) {
+		return 'a' <= c && c <= 'z' || this.isDigit(c);
+	}
+
+	private boolean isDigit(char c) {
+		return '0' <= c && c <= '9';
+	}
+
+	private boolean isBlank(char c) {
+		return c == ' ' || c == '\n';
+	}
+
+	private boolean isSentenceEnd(char c) {
+		return c == '.' || c == '!' || c == '?';
+	}
+
+	private boolean isSentenceEndOrSpace(char c) {
+		return c == ' ' || this.isSentenceEnd(c);
 	}
 
 	public static class Range implements Comparable<Range> {
@@ -254,6 +517,94 @@ public class NormalizedString {
 
 	}
 
+	/**
+	 * The changes compiled to revert ranges in logarithmic time. Changes applied left to right do not overlap, each
+	 * such run is reverted at once: changes after a range leave it as it is, changes before or within it shift it by
+	 * their summed deltas, only the changes at its boundaries are reverted one by one. Empty ranges are reverted one
+	 * change at a time, as changes at their position include them.
+	 */
+	static class OffsetMap {
+
+		private final Change[] changes;
+		private final int[] starts;
+		// end of each change after applying it
+		private final int[] ends;
+		// deltas[i] is the sum of deltas of the changes before i
+		private final int[] deltas;
+		// first change of each run, followed by the number of changes
+		private final int[] runs;
+
+		OffsetMap(List<Change> changes) {
+			this.changes = changes.toArray(new Change[0]);
+			this.starts = new int[this.changes.length];
+			this.ends = new int[this.changes.length];
+			this.deltas = new int[this.changes.length + 1];
+			List<Integer> runs = new ArrayList<>();
+			for (int i = 0; i < this.changes.length; i = i + 1) {
+				Change change = this.changes[i];
+				this.starts[i] = change.range.start;
+				this.ends[i] = change.range.start + change.length;
+				this.deltas[i + 1] = this.deltas[i] + change.delta();
+				if (i == 0 || this.starts[i] < this.ends[i - 1]) {
+					runs.add(i);
+				}
+			}
+			runs.add(this.changes.length);
+			this.runs = runs.stream().mapToInt(Integer::intValue).toArray();
+		}
+
+		Range revert(Range range) {
+			for (int i = this.runs.length - 2; i >= 0; i = i - 1) {
+				range = this.revert(range, this.runs[i], this.runs[i + 1]);
+			}
+			return range;
+		}
+
+		private Range revert(Range range, int from, int to) {
+			int start = range.start;
+			int end = range.end;
+			// changes starting at or after the end leave the range as it is, unless it is empty and thus included
+			int i = start < end ? this.firstStartAfter(from, to, end - 1) - 1 : to - 1;
+			while (i >= from) {
+				if (start < end && this.ends[i] <= start) {
+					// this and all preceding changes are before the range
+					int delta = this.deltas[i + 1] - this.deltas[from];
+					return new Range(start - delta, end - delta);
+				}
+				if (start < end && start < this.starts[i] && this.ends[i] < end) {
+					// this and all preceding changes starting after the start are within the range
+					int first = this.firstStartAfter(from, i + 1, start);
+					end = end - (this.deltas[i + 1] - this.deltas[first]);
+					i = first - 1;
+					continue;
+				}
+				range = this.changes[i].revert(new Range(start, end));
+				start = range.start;
+				end = range.end;
+				i = i - 1;
+			}
+			return new Range(start, end);
+		}
+
+		/**
+		 * @return first change in [from, to) starting after the position, to if there is none
+		 */
+		private int firstStartAfter(int from, int to, int position) {
+			int low = from;
+			int high = to;
+			while (low < high) {
+				int middle = (low + high) >>> 1;
+				if (this.starts[middle] <= position) {
+					low = middle + 1;
+				} else {
+					high = middle;
+				}
+			}
+			return low;
+		}
+
+	}
+
 	public static class Change {
 
 		public final Range range;
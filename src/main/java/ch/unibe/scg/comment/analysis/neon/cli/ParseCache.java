@@ -0,0 +1,123 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.task.Utility;
+import edu.stanford.nlp.parser.lexparser.LexicalizedParser;
+import edu.stanford.nlp.trees.Tree;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.HexFormat;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Stores the parse trees of sentences in the "parse_cache" table, keyed by the hash of the parser version and the
+ * sentence as passed to the parser. Trees are looked up by content, so the cache is shared by all data sources and
+ * tasks using the same database. Safe to share across threads.
+ */
+public class ParseCache {
+
+	/**
+	 * Parser the trees are computed by, cached trees of other versions are never looked up.
+	 */
+	public static final String VERSION = String.format("stanford-corenlp-%s/%s",
+			LexicalizedParser.class.getPackage().getImplementationVersion(),
+			LexicalizedParser.DEFAULT_PARSER_LOC
+	);
+	private final Connection connection;
+	private final PreparedStatement select;
+	private final PreparedStatement insert;
+	private long hits;
+	private long misses;
+
+	/**
+	 * @param connection SQLite database to store trees in, the table is created if missing
+	 */
+	public ParseCache(Connection connection) throws SQLException, IOException {
+		super();
+		this.connection = connection;
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(Utility.resource("sql/parse_cache.sql"));
+		}
+		this.select = connection.prepareStatement("SELECT tree FROM parse_cache WHERE key = ?");
+		this.insert = connection.prepareStatement("INSERT OR IGNORE INTO parse_cache (key, tree) VALUES (?, ?)");
+	}
+
+	/**
+	 * @return the cached tree of the sentence, null if not cached
+	 */
+	public synchronized Tree get(String sentence) throws SQLException, IOException {
+		this.select.setString(1, this.key(sentence));
+		try (ResultSet result = this.select.executeQuery()) {
+			if (!result.next()) {
+				this.misses = this.misses + 1;
+				return null;
+			}
+			this.hits = this.hits + 1;
+			try (
+					ObjectInputStream input = new ObjectInputStream(new InflaterInputStream(new ByteArrayInputStream(
+							result.getBytes("tree"))))
+			) {
+				return (Tree) input.readObject();
+			} catch (ClassNotFoundException e) {
+				throw new IOException(e);
+			}
+		}
+	}
+
+	public synchronized void put(String sentence, Tree tree) throws SQLException, IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (ObjectOutputStream output = new ObjectOutputStream(new DeflaterOutputStream(buffer))) {
+			output.writeObject(tree);
+		}
+		this.insert.setString(1, this.key(sentence));
+		this.insert.setBytes(2, buffer.toByteArray());
+		this.insert.executeUpdate();
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	/**
+	 * @return share of lookups that were hits, 0 without lookups
+	 */
+	public synchronized double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : (double) this.hits / lookups;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ParseCache{" + "hits=" + this.hits + ", misses=" + this.misses + ", hitRate=" + String.format("%.3f",
+				this.getHitRate()
+		) + '}';
+	}
+
+	private String key(String sentence) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(VERSION.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			return HexFormat.of().formatHex(digest.digest(sentence.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
@@ -0,0 +1,167 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.neon.pathsFinder.model.Sentence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.DriverManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * Owns a fixed number of {@link DependencyParser}s, each used by one thread at a time. Parsers are created and warmed
+ * up in the background, callers block until one is available. Safe to share across threads.
+ * <p>
+ * The model of the parsers is shared, as it is large and read-only, everything else is confined to the borrowing
+ * thread.
+ */
+public class ParserPool {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ParserPool.class);
+	private static final String WARM_UP = "This class provides the value.";
+	private static ParserPool instance;
+	private final int size;
+	private final ParseCache cache;
+	private final BlockingQueue<DependencyParser> parsers;
+	private final AtomicLong borrows;
+	private final AtomicLong waitNanos;
+	private final AtomicLong parseNanos;
+	private volatile Throwable failure;
+
+	/**
+	 * @param size  number of parsers, at most as many threads parse at once
+	 * @param cache to look up and store parse trees in, null to always parse
+	 */
+	public ParserPool(int size, ParseCache cache) {
+		super();
+		if (size < 1) {
+			throw new IllegalArgumentException("size must be positive");
+		}
+		this.size = size;
+		this.cache = cache;
+		this.parsers = new ArrayBlockingQueue<>(size);
+		this.borrows = new AtomicLong();
+		this.waitNanos = new AtomicLong();
+		this.parseNanos = new AtomicLong();
+		Thread warmUp = new Thread(this::warmUp, "parser-pool-warm-up");
+		warmUp.setDaemon(true);
+		warmUp.start();
+	}
+
+	/**
+	 * @return the pool shared by the whole process, with a parser per core, caching parse trees in the SQLite database
+	 * at the path of the system property "parse.cache", if set
+	 */
+	public static synchronized ParserPool getInstance() throws Exception {
+		if (instance == null) {
+			String database = System.getProperty("parse.cache");
+			instance = new ParserPool(Runtime.getRuntime().availableProcessors(),
+					database == null ? null : new ParseCache(DriverManager.getConnection("jdbc:sqlite:" + database))
+			);
+		}
+		return instance;
+	}
+
+	/**
+	 * @see DependencyParser#parse(String)
+	 */
+	public List<DependencyParser.Parse> parse(String text) throws InterruptedException {
+		return this.apply(parser -> parser.parse(text));
+	}
+
+	/**
+	 * @see DependencyParser#sentences(String)
+	 */
+	public ArrayList<Sentence> sentences(String text) throws InterruptedException {
+		return this.apply(parser -> parser.sentences(text));
+	}
+
+	/**
+	 * Borrows a parser for the function and returns it afterwards, the parser must not escape the function.
+	 */
+	public <T> T apply(Function<DependencyParser, T> function) throws InterruptedException {
+		long start = System.nanoTime();
+		DependencyParser parser = this.borrow();
+		long borrowed = System.nanoTime();
+		try {
+			return function.apply(parser);
+		} finally {
+			this.parsers.add(parser);
+			this.borrows.incrementAndGet();
+			this.waitNanos.addAndGet(borrowed - start);
+			this.parseNanos.addAndGet(System.nanoTime() - borrowed);
+		}
+	}
+
+	public int getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return cache of parse trees, null if not caching
+	 */
+	public ParseCache getCache() {
+		return this.cache;
+	}
+
+	public long getBorrows() {
+		return this.borrows.get();
+	}
+
+	/**
+	 * @return total time spent waiting for a parser, in milliseconds
+	 */
+	public long getWaitMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.waitNanos.get());
+	}
+
+	/**
+	 * @return total time parsers were borrowed, in milliseconds
+	 */
+	public long getParseMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.parseNanos.get());
+	}
+
+	@Override
+	public String toString() {
+		return "ParserPool{" + "size=" + this.size + ", available=" + this.parsers.size() + ", borrows="
+				+ this.getBorrows() + ", waitMillis=" + this.getWaitMillis() + ", parseMillis=" + this.getParseMillis()
+				+ ", cache=" + this.cache + '}';
+	}
+
+	private DependencyParser borrow() throws InterruptedException {
+		while (true) {
+			DependencyParser parser = this.parsers.poll(1, TimeUnit.SECONDS);
+			if (parser != null) {
+				return parser;
+			}
+			if (this.failure != null) {
+				throw new IllegalStateException("parsers failed to initialize", this.failure);
+			}
+		}
+	}
+
+	private void warmUp() {
+		long start = System.nanoTime();
+		for (int i = 0; i < this.size; i = i + 1) {
+			try {
+				// the first parser loads the model, parsing loads the tokenizer and compiles the hot paths
+				DependencyParser parser = new DependencyParser(this.cache);
+				parser.parse(WARM_UP);
+				this.parsers.add(parser);
+			} catch (Throwable e) {
+				// errors too, such as a model that does not fit into memory, borrowers would wait forever otherwise
+				LOGGER.error("parser failed to initialize", e);
+				this.failure = e;
+				return;
+			}
+		}
+		LOGGER.info("{} parsers warmed up in {} ms", this.size, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+	}
+
+}
@@ -0,0 +1,233 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.task.Utility;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Stores the categories of sentences as bitmasks in the "result_cache" table, keyed by the hash of the fingerprint of
+ * the classifiers and the sentence as passed to them. The fingerprint must change with any resource the categories
+ * depend on, cached categories of other fingerprints are never looked up and eventually evicted. Holds at most the
+ * capacity of sentences, evicting the least recently used first. Safe to share across threads.
+ */
+public class ResultCache {
+
+	/**
+	 * Number of lookups whose use is recorded at once if no categories are put in between, as on a warm scan.
+	 */
+	private static final int USED = 1024;
+	private static ResultCache instance;
+	private final Connection connection;
+	private final long capacity;
+	private final PreparedStatement select;
+	private final PreparedStatement touch;
+	private final PreparedStatement update;
+	private final PreparedStatement insert;
+	private final PreparedStatement evict;
+	// keys looked up since the last put or flush, their use is recorded on either
+	private final List<String> used;
+	private long clock;
+	private long size;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param connection SQLite database to store categories in, the table is created if missing
+	 * @param capacity   number of sentences to keep
+	 */
+	public ResultCache(Connection connection, long capacity) throws SQLException, IOException {
+		super();
+		this.connection = connection;
+		this.capacity = capacity;
+		try (Statement statement = connection.createStatement()) {
+			statement.executeUpdate(Utility.resource("sql/result_cache.sql"));
+			statement.executeUpdate(Utility.resource("sql/result_cache_used.sql"));
+			try (ResultSet result = statement.executeQuery("SELECT COUNT(*), MAX(used) FROM result_cache")) {
+				result.next();
+				this.size = result.getLong(1);
+				this.clock = result.getLong(2);
+			}
+		}
+		this.select = connection.prepareStatement("SELECT categories FROM result_cache WHERE key = ?");
+		this.touch = connection.prepareStatement("UPDATE result_cache SET used = ? WHERE key = ?");
+		this.update = connection.prepareStatement("UPDATE result_cache SET categories = ?, used = ? WHERE key = ?");
+		this.insert = connection.prepareStatement("INSERT INTO result_cache (categories, used, key) VALUES (?, ?, ?)");
+		this.evict = connection.prepareStatement(
+				"DELETE FROM result_cache WHERE key IN (SELECT key FROM result_cache ORDER BY used ASC LIMIT ?)");
+		this.used = new ArrayList<>();
+	}
+
+	/**
+	 * @return the cache shared by the whole process, storing categories in the SQLite database at the path of the
+	 * system property "result.cache" and holding at most "result.cache.size" sentences, 1000000 by default, null if
+	 * the path is not set
+	 */
+	public static synchronized ResultCache getInstance() throws Exception {
+		if (instance == null) {
+			String database = System.getProperty("result.cache");
+			if (database == null) {
+				return null;
+			}
+			instance = new ResultCache(DriverManager.getConnection("jdbc:sqlite:" + database),
+					Long.getLong("result.cache.size", 1000000)
+			);
+		}
+		return instance;
+	}
+
+	/**
+	 * @param fingerprint of the classifiers
+	 * @return the bitmask of the categories of the sentence, null if not cached
+	 */
+	public synchronized Long get(String fingerprint, String sentence) throws SQLException {
+		String key = this.key(fingerprint, sentence);
+		this.select.setString(1, key);
+		try (ResultSet result = this.select.executeQuery()) {
+			if (!result.next()) {
+				this.misses = this.misses + 1;
+				return null;
+			}
+			this.hits = this.hits + 1;
+			this.used.add(key);
+			long categories = result.getLong("categories");
+			if (this.used.size() >= USED) {
+				this.flush();
+			}
+			return categories;
+		}
+	}
+
+	/**
+	 * Records the use of the sentences looked up since the last put or flush, so that sentences that are only ever
+	 * looked up are not evicted as least recently used.
+	 */
+	public synchronized void flush() throws SQLException {
+		if (this.used.isEmpty()) {
+			return;
+		}
+		boolean autoCommit = this.connection.getAutoCommit();
+		this.connection.setAutoCommit(false);
+		try {
+			this.touch();
+			this.connection.commit();
+			this.used.clear();
+		} catch (SQLException e) {
+			this.connection.rollback();
+			throw e;
+		} finally {
+			this.connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	/**
+	 * Stores the categories of the sentences in a single transaction, records the use of the sentences looked up
+	 * since and evicts the least recently used sentences if the capacity is exceeded.
+	 *
+	 * @param fingerprint of the classifiers
+	 * @param categories  bitmask of the categories of each sentence
+	 */
+	public synchronized void put(String fingerprint, Map<String, Long> categories) throws SQLException {
+		boolean autoCommit = this.connection.getAutoCommit();
+		this.connection.setAutoCommit(false);
+		try {
+			this.touch();
+			for (Map.Entry<String, Long> entry : categories.entrySet()) {
+				this.clock = this.clock + 1;
+				if (this.set(this.update, fingerprint, entry).executeUpdate() == 0) {
+					this.set(this.insert, fingerprint, entry).executeUpdate();
+					this.size = this.size + 1;
+				}
+			}
+			if (this.size > this.capacity) {
+				// evict a tenth more than needed, so that eviction does not run on every put
+				long evicted = this.size - this.capacity + this.capacity / 10;
+				this.evict.setLong(1, evicted);
+				evicted = this.evict.executeUpdate();
+				this.size = this.size - evicted;
+				this.evictions = this.evictions + evicted;
+			}
+			this.connection.commit();
+			this.used.clear();
+		} catch (SQLException e) {
+			this.connection.rollback();
+			throw e;
+		} finally {
+			this.connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	public synchronized long getHits() {
+		return this.hits;
+	}
+
+	public synchronized long getMisses() {
+		return this.misses;
+	}
+
+	public synchronized long getEvictions() {
+		return this.evictions;
+	}
+
+	public synchronized long getSize() {
+		return this.size;
+	}
+
+	/**
+	 * @return share of lookups that were hits, 0 without lookups
+	 */
+	public synchronized double getHitRate() {
+		long lookups = this.hits + this.misses;
+		return lookups == 0 ? 0 : (double) this.hits / lookups;
+	}
+
+	@Override
+	public synchronized String toString() {
+		return "ResultCache{" + "hits=" + this.hits + ", misses=" + this.misses + ", hitRate=" + String.format("%.3f",
+				this.getHitRate()
+		) + ", evictions=" + this.evictions + ", size=" + this.size + '}';
+	}
+
+	private void touch() throws SQLException {
+		for (String key : this.used) {
+			this.clock = this.clock + 1;
+			this.touch.setLong(1, this.clock);
+			this.touch.setString(2, key);
+			this.touch.addBatch();
+		}
+		this.touch.executeBatch();
+	}
+
+	private PreparedStatement set(PreparedStatement statement, String fingerprint, Map.Entry<String, Long> entry)
+			throws SQLException {
+		statement.setLong(1, entry.getValue());
+		statement.setLong(2, this.clock);
+		statement.setString(3, this.key(fingerprint, entry.getKey()));
+		return statement;
+	}
+
+	private String key(String fingerprint, String sentence) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			digest.update(fingerprint.getBytes(StandardCharsets.UTF_8));
+			digest.update((byte) '\n');
+			return HexFormat.of().formatHex(digest.digest(sentence.getBytes(StandardCharsets.UTF_8)));
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+}
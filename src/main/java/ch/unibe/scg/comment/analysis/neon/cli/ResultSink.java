@@ -0,0 +1,244 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Writes labelled sentences one record at a time, records are not collected, so memory does not grow with the output.
+ * The categories of a sentence are passed as bitmask, bit i is set if the sentence is in the i-th category of its
+ * data source. Not thread-safe.
+ */
+public interface ResultSink extends Closeable {
+
+	/**
+	 * @param format     [tsv|ndjson|binary]
+	 * @param categories categories of each data source, in bitmask order
+	 */
+	static ResultSink of(String format, OutputStream output, Map<String, List<String>> categories)
+			throws IOException {
+		if ("tsv".equals(format)) {
+			return new Tsv(output, categories);
+		} else if ("ndjson".equals(format)) {
+			return new Ndjson(output);
+		} else if ("binary".equals(format)) {
+			return new Binary(output, categories);
+		}
+		throw new IllegalArgumentException(String.format("format %s is unknown", format));
+	}
+
+	/**
+	 * @return bitmask of the labels, at most 64 categories are supported
+	 */
+	static long mask(List<String> categories, List<String> labels) {
+		long mask = 0;
+		for (String label : labels) {
+			int i = categories.indexOf(label);
+			if (i < 0 || i >= Long.SIZE) {
+				throw new IllegalArgumentException(String.format("category %s is not in %s", label, categories));
+			}
+			mask = mask | 1L << i;
+		}
+		return mask;
+	}
+
+	/**
+	 * @param range      of the sentence in the original file
+	 * @param categories bitmask of the categories of the sentence
+	 */
+	void write(Path file, String data, Range range, long categories) throws IOException;
+
+	void flush() throws IOException;
+
+	/**
+	 * Lines of {@code [path]\t[start]\t[end]\t[category],[category]}. Tabs, line breaks and backslashes in the path
+	 * are escaped as {@code \t}, {@code \n}, {@code \r} and {@code \\}, so that every record is one line of four
+	 * columns.
+	 */
+	class Tsv implements ResultSink {
+
+		private final Writer writer;
+		private final Map<String, List<String>> categories;
+
+		public Tsv(OutputStream output, Map<String, List<String>> categories) {
+			this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+			this.categories = categories;
+		}
+
+		@Override
+		public void write(Path file, String data, Range range, long categories) throws IOException {
+			List<String> names = this.categories.get(data);
+			List<String> labels = new ArrayList<>();
+			for (int i = 0; i < names.size(); i = i + 1) {
+				if ((categories & 1L << i) != 0) {
+					labels.add(names.get(i));
+				}
+			}
+			this.writer.write(String.format("%s\t%d\t%d\t%s\n",
+					this.escape(file.toString()),
+					range.start,
+					range.end,
+					String.join(",", labels)
+			));
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.writer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.writer.close();
+		}
+
+		private String escape(String s) {
+			StringBuilder builder = new StringBuilder(s.length());
+			for (int i = 0; i < s.length(); i = i + 1) {
+				char c = s.charAt(i);
+				if (c == '\t') {
+					builder.append("\\t");
+				} else if (c == '\n') {
+					builder.append("\\n");
+				} else if (c == '\r') {
+					builder.append("\\r");
+				} else if (c == '\\') {
+					builder.append("\\\\");
+				} else {
+					builder.append(c);
+				}
+			}
+			return builder.toString();
+		}
+
+	}
+
+	/**
+	 * Lines of {@code {"file":[path],"data":[data],"start":[start],"end":[end],"categories":[bitmask]}}.
+	 */
+	class Ndjson implements ResultSink {
+
+		private final Writer writer;
+
+		public Ndjson(OutputStream output) {
+			this.writer = new BufferedWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8));
+		}
+
+		@Override
+		public void write(Path file, String data, Range range, long categories) throws IOException {
+			this.writer.write(String.format("{\"file\":%s,\"data\":%s,\"start\":%d,\"end\":%d,\"categories\":%d}\n",
+					this.quote(file.toString()),
+					this.quote(data),
+					range.start,
+					range.end,
+					categories
+			));
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.writer.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.writer.close();
+		}
+
+		private String quote(String s) {
+			StringBuilder builder = new StringBuilder(s.length() + 2).append('"');
+			for (int i = 0; i < s.length(); i = i + 1) {
+				char c = s.charAt(i);
+				if (c == '"' || c == '\\') {
+					builder.append('\\').append(c);
+				} else if (c < 0x20) {
+					builder.append(String.format("\\u%04x", (int) c));
+				} else {
+					builder.append(c);
+				}
+			}
+			return builder.append('"').toString();
+		}
+
+	}
+
+	/**
+	 * The magic bytes "NEON", the version 1 and the number of data sources, each as name, number of categories and
+	 * category names, followed by records. A file record is tagged 1 and holds the path and the index of its data
+	 * source, it applies to the following sentence records. A sentence record is tagged 2 and holds the start, the
+	 * length and the bitmask. Names are written as modified UTF-8, see {@link DataOutputStream#writeUTF(String)},
+	 * numbers as unsigned LEB128 varints.
+	 */
+	class Binary implements ResultSink {
+
+		public static final int MAGIC = 0x4E454F4E;
+		public static final int VERSION = 1;
+		public static final int FILE = 1;
+		public static final int SENTENCE = 2;
+		private final DataOutputStream output;
+		private final List<String> data;
+		private Path file;
+
+		public Binary(OutputStream output, Map<String, List<String>> categories) throws IOException {
+			this.output = new DataOutputStream(new BufferedOutputStream(output));
+			this.data = new ArrayList<>(categories.keySet());
+			this.output.writeInt(MAGIC);
+			this.output.writeByte(VERSION);
+			this.writeVarint(this.data.size());
+			for (String data : this.data) {
+				this.output.writeUTF(data);
+				this.writeVarint(categories.get(data).size());
+				for (String category : categories.get(data)) {
+					this.output.writeUTF(category);
+				}
+			}
+		}
+
+		@Override
+		public void write(Path file, String data, Range range, long categories) throws IOException {
+			if (!file.equals(this.file)) {
+				this.file = file;
+				this.output.writeByte(FILE);
+				this.output.writeUTF(file.toString());
+				this.writeVarint(this.data.indexOf(data));
+			}
+			this.output.writeByte(SENTENCE);
+			this.writeVarint(range.start);
+			this.writeVarint(range.length());
+			this.writeVarint(categories);
+		}
+
+		@Override
+		public void flush() throws IOException {
+			this.output.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			this.output.close();
+		}
+
+		private void writeVarint(long value) throws IOException {
+			long v = value;
+			while ((v & ~0x7FL) != 0) {
+				this.output.writeByte((int) (v & 0x7F | 0x80));
+				v = v >>> 7;
+			}
+			this.output.writeByte((int) v);
+		}
+
+	}
+
+}
@@ -0,0 +1,92 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+import org.neon.pathsFinder.model.Sentence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits normalized text into sentences, see {@link NormalizedString} for its alphabet. By rules, a sentence ends at a
+ * line end and after a run of ".", "!" and "?" followed by a space or a line end, except after initials, as CoreNLP
+ * splits the lines of such text. Sentences exclude the spaces around them.
+ */
+public class SentenceSplitter {
+
+	private SentenceSplitter() {
+		super();
+	}
+
+	/**
+	 * @return ranges of the sentences in the normalized text, in order
+	 */
+	public static List<Range> split(String normalized) {
+		List<Range> ranges = new ArrayList<>();
+		// start of the current sentence, -1 between sentences
+		int start = -1;
+		// end of the last non-space character of the current sentence
+		int end = -1;
+		int i = 0;
+		while (i < normalized.length()) {
+			char c = normalized.charAt(i);
+			if (c == '\n') {
+				if (start >= 0) {
+					ranges.add(new Range(start, end));
+					start = -1;
+				}
+				i = i + 1;
+			} else if (c == ' ') {
+				i = i + 1;
+			} else {
+				if (start < 0) {
+					start = i;
+				}
+				i = i + 1;
+				if (isSentenceEnd(c)) {
+					while (i < normalized.length() && isSentenceEnd(normalized.charAt(i))) {
+						i = i + 1;
+					}
+					boolean followed = i == normalized.length() || normalized.charAt(i) == ' '
+							|| normalized.charAt(i) == '\n';
+					if (followed && !isInitial(normalized, i - 1)) {
+						ranges.add(new Range(start, i));
+						start = -1;
+					}
+				}
+				end = i;
+			}
+		}
+		if (start >= 0) {
+			ranges.add(new Range(start, end));
+		}
+		return ranges;
+	}
+
+	/**
+	 * @return ranges of the sentences in the normalized text as split by NEON when discovering heuristics, in order
+	 */
+	public static List<Range> split(ParserPool parsers, String normalized) throws InterruptedException {
+		List<Range> ranges = new ArrayList<>();
+		int i = 0;
+		for (Sentence sentence : parsers.sentences(normalized)) {
+			i = normalized.indexOf(sentence.getText().charAt(0), i);
+			ranges.add(new Range(i, i + sentence.getText().length()));
+			i = i + sentence.getText().length();
+		}
+		return ranges;
+	}
+
+	/**
+	 * CoreNLP takes a single letter followed by a single "." for an initial, which does not end a sentence.
+	 */
+	private static boolean isInitial(String normalized, int dot) {
+		return normalized.charAt(dot) == '.' && dot >= 1 && Character.isLetter(normalized.charAt(dot - 1)) && (
+				dot == 1 || normalized.charAt(dot - 2) == ' ' || normalized.charAt(dot - 2) == '\n'
+		);
+	}
+
+	private static boolean isSentenceEnd(char c) {
+		return c == '.' || c == '!' || c == '?';
+	}
+
+}
@@ -0,0 +1,500 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import weka.core.Attribute;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.LongBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.Predicate;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+
+/**
+ * A dataset as built by {@link InstancesBuilder#build()} in a compact binary form: the category labels of each row as
+ * a bitmask, the features as a sparse matrix in compressed sparse row format and the names of the attributes. Rows
+ * are converted to Weka {@link Instances} on demand, either all attributes as built or the features of a projection
+ * together with one label, see {@link #project(int, int[])}. Immutable and thus safe to share across threads.
+ * <p>
+ * The format starts with the magic bytes "NEOD", the version 1 and the length of the body, followed by the body
+ * compressed with {@link Deflater}: the relation name, the number of labels and their names, the number of features
+ * and the name and kind of each, 1 if nominal with values "0" and "1", 0 if numeric, the number of rows and values,
+ * followed by the label bitmasks, the row weights, the row offsets, the columns and values. Names are written as
+ * modified UTF-8, see {@link DataOutputStream#writeUTF(String)}, numbers big-endian.
+ */
+public class SparseDataset {
+
+	public static final int MAGIC = 0x4E454F44;
+	public static final int VERSION = 1;
+	private static final String LABEL_PREFIX = "category-";
+	private final String relationName;
+	private final List<String> labels;
+	private final List<String> features;
+	private final boolean[] nominal;
+	private final int rows;
+	// labels of each row, words per row longs
+	private final int words;
+	private final LongBuffer bitmasks;
+	private final DoubleBuffer weights;
+	// first value of each row, values of row i are offsets[i] until offsets[i + 1]
+	private final IntBuffer offsets;
+	// feature of each value, ascending in a row
+	private final IntBuffer columns;
+	private final DoubleBuffer values;
+
+	private SparseDataset(
+			String relationName,
+			List<String> labels,
+			List<String> features,
+			boolean[] nominal,
+			int rows,
+			LongBuffer bitmasks,
+			DoubleBuffer weights,
+			IntBuffer offsets,
+			IntBuffer columns,
+			DoubleBuffer values
+	) {
+		super();
+		this.relationName = relationName;
+		this.labels = labels;
+		this.features = features;
+		this.nominal = nominal;
+		this.rows = rows;
+		this.words = words(labels.size());
+		this.bitmasks = bitmasks;
+		this.weights = weights;
+		this.offsets = offsets;
+		this.columns = columns;
+		this.values = values;
+	}
+
+	/**
+	 * @param instances the "category-" attributes are the labels, all other attributes the features, which must be
+	 *                  numeric or nominal with values "0" and "1"
+	 */
+	public static SparseDataset of(Instances instances) {
+		List<String> labels = new ArrayList<>();
+		List<String> features = new ArrayList<>();
+		// label or feature index of each attribute
+		int[] index = new int[instances.numAttributes()];
+		boolean[] label = new boolean[instances.numAttributes()];
+		boolean[] nominal = new boolean[instances.numAttributes()];
+		for (int i = 0; i < instances.numAttributes(); i = i + 1) {
+			Attribute attribute = instances.attribute(i);
+			boolean binary = attribute.isNominal() && attribute.numValues() == 2 && attribute.value(0).equals("0")
+					&& attribute.value(1).equals("1");
+			if (!binary && !attribute.isNumeric()) {
+				throw new IllegalArgumentException(String.format("attribute %s is not numeric or binary",
+						attribute.name()
+				));
+			}
+			if (attribute.name().startsWith(LABEL_PREFIX)) {
+				if (!binary) {
+					throw new IllegalArgumentException(String.format("label %s is not binary", attribute.name()));
+				}
+				label[i] = true;
+				index[i] = labels.size();
+				labels.add(attribute.name());
+			} else {
+				index[i] = features.size();
+				nominal[features.size()] = binary;
+				features.add(attribute.name());
+			}
+		}
+		int rows = instances.numInstances();
+		int words = words(labels.size());
+		long[] bitmasks = new long[rows * words];
+		double[] weights = new double[rows];
+		int[] offsets = new int[rows + 1];
+		int[] columns = new int[16];
+		double[] values = new double[16];
+		int n = 0;
+		for (int row = 0; row < rows; row = row + 1) {
+			Instance instance = instances.instance(row);
+			weights[row] = instance.weight();
+			for (int i = 0; i < instance.numValues(); i = i + 1) {
+				int attribute = instance.index(i);
+				double value = instance.valueSparse(i);
+				if (value == 0) {
+					continue;
+				}
+				if (label[attribute]) {
+					if (value != 1) {
+						throw new IllegalArgumentException(String.format("label %s of row %d is missing",
+								instances.attribute(attribute).name(),
+								row
+						));
+					}
+					bitmasks[row * words + index[attribute] / Long.SIZE] |= 1L << (index[attribute] % Long.SIZE);
+				} else {
+					if (n == columns.length) {
+						columns = Arrays.copyOf(columns, n * 2);
+						values = Arrays.copyOf(values, n * 2);
+					}
+					columns[n] = index[attribute];
+					values[n] = value;
+					n = n + 1;
+				}
+			}
+			offsets[row + 1] = n;
+		}
+		return new SparseDataset(instances.relationName(),
+				List.copyOf(labels),
+				List.copyOf(features),
+				Arrays.copyOf(nominal, features.size()),
+				rows,
+				LongBuffer.wrap(bitmasks),
+				DoubleBuffer.wrap(weights),
+				IntBuffer.wrap(offsets),
+				IntBuffer.wrap(columns, 0, n).slice(),
+				DoubleBuffer.wrap(values, 0, n).slice()
+		);
+	}
+
+	/**
+	 * @return whether the bytes start like a dataset of this version, other datasets are ARFF
+	 */
+	public static boolean isSparseDataset(byte[] bytes) {
+		return bytes.length >= Integer.BYTES + 1 && ByteBuffer.wrap(bytes).getInt() == MAGIC
+				&& bytes[Integer.BYTES] == VERSION;
+	}
+
+	/**
+	 * Decompresses the body once, the arrays are read in place.
+	 *
+	 * @param bytes see {@link #write()}
+	 */
+	public static SparseDataset read(byte[] bytes) throws IOException {
+		if (!isSparseDataset(bytes)) {
+			throw new IOException(String.format("not a sparse dataset of version %d", VERSION));
+		}
+		ByteBuffer header = ByteBuffer.wrap(bytes);
+		header.position(Integer.BYTES + 1);
+		byte[] body = new byte[header.getInt()];
+		Inflater inflater = new Inflater();
+		try {
+			inflater.setInput(bytes, header.position(), bytes.length - header.position());
+			int length = 0;
+			while (length < body.length && !inflater.finished()) {
+				int read = inflater.inflate(body, length, body.length - length);
+				if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+					break;
+				}
+				length = length + read;
+			}
+			if (length != body.length) {
+				throw new IOException("sparse dataset is truncated");
+			}
+		} catch (DataFormatException e) {
+			throw new IOException("sparse dataset is corrupt", e);
+		} finally {
+			inflater.end();
+		}
+		ByteBuffer buffer = ByteBuffer.wrap(body);
+		try {
+			String relationName = readUTF(buffer);
+			List<String> labels = new ArrayList<>();
+			int count = buffer.getInt();
+			for (int i = 0; i < count; i = i + 1) {
+				labels.add(readUTF(buffer));
+			}
+			List<String> features = new ArrayList<>();
+			count = buffer.getInt();
+			boolean[] nominal = new boolean[count];
+			for (int i = 0; i < count; i = i + 1) {
+				features.add(readUTF(buffer));
+				nominal[i] = buffer.get() != 0;
+			}
+			int rows = buffer.getInt();
+			int values = buffer.getInt();
+			return new SparseDataset(relationName,
+					List.copyOf(labels),
+					List.copyOf(features),
+					nominal,
+					rows,
+					section(buffer, Long.BYTES * rows * words(labels.size())).asLongBuffer(),
+					section(buffer, Double.BYTES * rows).asDoubleBuffer(),
+					section(buffer, Integer.BYTES * (rows + 1)).asIntBuffer(),
+					section(buffer, Integer.BYTES * values).asIntBuffer(),
+					section(buffer, Double.BYTES * values).asDoubleBuffer()
+			);
+		} catch (RuntimeException e) {
+			throw new IOException("sparse dataset is corrupt", e);
+		}
+	}
+
+	public byte[] write() throws IOException {
+		ByteArrayOutputStream body = new ByteArrayOutputStream();
+		DataOutputStream output = new DataOutputStream(body);
+		output.writeUTF(this.relationName);
+		output.writeInt(this.labels.size());
+		for (String label : this.labels) {
+			output.writeUTF(label);
+		}
+		output.writeInt(this.features.size());
+		for (int i = 0; i < this.features.size(); i = i + 1) {
+			output.writeUTF(this.features.get(i));
+			output.writeByte(this.nominal[i] ? 1 : 0);
+		}
+		output.writeInt(this.rows);
+		output.writeInt(this.numValues());
+		ByteBuffer arrays = ByteBuffer.allocate(Long.BYTES * this.bitmasks.limit() + Double.BYTES * this.rows
+				+ Integer.BYTES * (this.rows + 1) + (Integer.BYTES + Double.BYTES) * this.numValues());
+		section(arrays, Long.BYTES * this.bitmasks.limit()).asLongBuffer().put(this.bitmasks.duplicate());
+		section(arrays, Double.BYTES * this.rows).asDoubleBuffer().put(this.weights.duplicate());
+		section(arrays, Integer.BYTES * (this.rows + 1)).asIntBuffer().put(this.offsets.duplicate());
+		section(arrays, Integer.BYTES * this.numValues()).asIntBuffer().put(this.columns.duplicate());
+		section(arrays, Double.BYTES * this.numValues()).asDoubleBuffer().put(this.values.duplicate());
+		output.write(arrays.array());
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		output = new DataOutputStream(bytes);
+		output.writeInt(MAGIC);
+		output.writeByte(VERSION);
+		output.writeInt(body.size());
+		try (DeflaterOutputStream deflater = new DeflaterOutputStream(bytes)) {
+			body.writeTo(deflater);
+		}
+		return bytes.toByteArray();
+	}
+
+	public String getRelationName() {
+		return this.relationName;
+	}
+
+	/**
+	 * @return names of the label attributes, "category-[category]"
+	 */
+	public List<String> getLabels() {
+		return this.labels;
+	}
+
+	/**
+	 * @return names of the feature attributes, in order of the columns
+	 */
+	public List<String> getFeatures() {
+		return this.features;
+	}
+
+	/**
+	 * @return columns of the features whose names match, ascending
+	 */
+	public int[] columns(Predicate<String> names) {
+		List<Integer> columns = new ArrayList<>();
+		for (int i = 0; i < this.features.size(); i = i + 1) {
+			if (names.test(this.features.get(i))) {
+				columns.add(i);
+			}
+		}
+		return columns.stream().mapToInt(Integer::intValue).toArray();
+	}
+
+	public int numRows() {
+		return this.rows;
+	}
+
+	/**
+	 * @return number of non-zero feature values
+	 */
+	public int numValues() {
+		return this.columns.limit();
+	}
+
+	public boolean hasLabel(int row, int label) {
+		return (this.bitmasks.get(row * this.words + label / Long.SIZE) & (1L << (label % Long.SIZE))) != 0;
+	}
+
+	/**
+	 * @return labels followed by features, as the dataset was built
+	 */
+	public Instances toInstances() {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		for (String label : this.labels) {
+			attributes.add(new Attribute(label, List.of("0", "1")));
+		}
+		int[] all = new int[this.features.size()];
+		for (int i = 0; i < all.length; i = i + 1) {
+			all[i] = i;
+			attributes.add(this.attribute(i));
+		}
+		Instances instances = new Instances(this.relationName, attributes, this.rows);
+		for (int row = 0; row < this.rows; row = row + 1) {
+			int count = 0;
+			for (int i = 0; i < this.labels.size(); i = i + 1) {
+				if (this.hasLabel(row, i)) {
+					count = count + 1;
+				}
+			}
+			int[] indices = new int[count + this.offsets.get(row + 1) - this.offsets.get(row)];
+			double[] values = new double[indices.length];
+			int n = 0;
+			for (int i = 0; i < this.labels.size(); i = i + 1) {
+				if (this.hasLabel(row, i)) {
+					indices[n] = i;
+					values[n] = 1;
+					n = n + 1;
+				}
+			}
+			this.project(row, all, this.labels.size(), indices, values, n);
+			instances.add(new SparseInstance(this.weights.get(row), values, indices, attributes.size()));
+		}
+		return instances;
+	}
+
+	/**
+	 * Projects the rows to some features and a label without copying the matrix, see {@link Projection}.
+	 *
+	 * @param label   index of the label, see {@link #getLabels()}
+	 * @param columns features to keep, ascending, see {@link #columns(Predicate)}
+	 */
+	public Projection project(int label, int[] columns) {
+		return new Projection(label, columns);
+	}
+
+	@Override
+	public String toString() {
+		return String.format("SparseDataset{relation=%s, rows=%d, labels=%d, features=%d, values=%d}",
+				this.relationName,
+				this.rows,
+				this.labels.size(),
+				this.features.size(),
+				this.numValues()
+		);
+	}
+
+	/**
+	 * A view of the dataset with some features followed by a label, the last attribute as usual for the class in
+	 * Weka. Its instances are created from the shared matrix on demand, one at a time. Safe to share across threads.
+	 */
+	public class Projection {
+
+		private final int label;
+		private final int size;
+		// position of each feature in the projection, -1 if not projected
+		private final int[] projection;
+		private final Instances header;
+
+		private Projection(int label, int[] columns) {
+			super();
+			this.label = label;
+			this.size = columns.length;
+			this.projection = new int[SparseDataset.this.features.size()];
+			Arrays.fill(this.projection, -1);
+			ArrayList<Attribute> attributes = new ArrayList<>();
+			for (int i = 0; i < columns.length; i = i + 1) {
+				if (i > 0 && columns[i] <= columns[i - 1]) {
+					throw new IllegalArgumentException("columns are not ascending");
+				}
+				this.projection[columns[i]] = i;
+				attributes.add(SparseDataset.this.attribute(columns[i]));
+			}
+			attributes.add(new Attribute(SparseDataset.this.labels.get(label), List.of("0", "1")));
+			this.header = new Instances(SparseDataset.this.relationName, attributes, 0);
+			this.header.setClassIndex(columns.length);
+		}
+
+		/**
+		 * @return the attributes of the projection, without instances
+		 */
+		public Instances getHeader() {
+			return new Instances(this.header, 0);
+		}
+
+		public int numRows() {
+			return SparseDataset.this.rows;
+		}
+
+		/**
+		 * @return a new instance of the row, its dataset is the header of the projection
+		 */
+		public Instance instance(int row) {
+			int count = SparseDataset.this.hasLabel(row, this.label) ? 1 : 0;
+			for (int i = SparseDataset.this.offsets.get(row); i < SparseDataset.this.offsets.get(row + 1); i = i + 1) {
+				if (this.projection[SparseDataset.this.columns.get(i)] >= 0) {
+					count = count + 1;
+				}
+			}
+			int[] indices = new int[count];
+			double[] values = new double[count];
+			int n = SparseDataset.this.project(row, this.projection, 0, indices, values, 0);
+			if (n < count) {
+				indices[n] = this.size;
+				values[n] = 1;
+			}
+			Instance instance = new SparseInstance(SparseDataset.this.weights.get(row),
+					values,
+					indices,
+					this.size + 1
+			);
+			instance.setDataset(this.header);
+			return instance;
+		}
+
+		/**
+		 * @return all rows of the projection
+		 */
+		public Instances toInstances() {
+			Instances instances = new Instances(this.header, SparseDataset.this.rows);
+			for (int row = 0; row < SparseDataset.this.rows; row = row + 1) {
+				instances.add(this.instance(row));
+			}
+			return instances;
+		}
+
+	}
+
+	/**
+	 * Copies the projected features of the row from position n on, offset by the given number of attributes.
+	 *
+	 * @return position after the last projected feature
+	 */
+	private int project(int row, int[] projection, int offset, int[] indices, double[] values, int n) {
+		for (int i = this.offsets.get(row); i < this.offsets.get(row + 1); i = i + 1) {
+			int column = projection[this.columns.get(i)];
+			if (column >= 0) {
+				indices[n] = offset + column;
+				values[n] = this.values.get(i);
+				n = n + 1;
+			}
+		}
+		return n;
+	}
+
+	private Attribute attribute(int feature) {
+		return this.nominal[feature]
+				? new Attribute(this.features.get(feature), List.of("0", "1"))
+				: new Attribute(this.features.get(feature));
+	}
+
+	private static int words(int labels) {
+		return (labels + Long.SIZE - 1) / Long.SIZE;
+	}
+
+	/**
+	 * @return the next length bytes of the buffer, which is advanced past them
+	 */
+	private static ByteBuffer section(ByteBuffer buffer, int length) {
+		ByteBuffer section = buffer.slice(buffer.position(), length);
+		buffer.position(buffer.position() + length);
+		return section;
+	}
+
+	private static String readUTF(ByteBuffer buffer) {
+		byte[] bytes = new byte[buffer.getShort() & 0xFFFF];
+		buffer.get(bytes);
+		// modified UTF-8 only differs for NUL and supplementary characters, which names do not contain
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+}
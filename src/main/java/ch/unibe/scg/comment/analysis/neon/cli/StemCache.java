@@ -0,0 +1,106 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import weka.core.stemmers.IteratedLovinsStemmer;
+import weka.core.stemmers.Stemmer;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * The {@link IteratedLovinsStemmer} with a bounded cache of the stems of recent words, shared by the whole process so
+ * that building dictionaries, vectorizing datasets and classifying stem each word of the small vocabulary of comments
+ * only once. Safe to share across threads, lookups do not lock.
+ * <p>
+ * The cache is direct-mapped: a word is cached in the slot of its hash, replacing the word that was cached there.
+ * Serialized caches, e.g. in filters, resolve to the shared instance.
+ */
+public class StemCache implements Stemmer {
+
+	private static final long serialVersionUID = 1L;
+	private static StemCache instance;
+	private final transient Stemmer stemmer;
+	private final transient AtomicReferenceArray<Entry> entries;
+	private final transient LongAdder hits;
+	private final transient LongAdder misses;
+
+	/**
+	 * @param capacity maximal number of cached words, rounded up to a power of 2
+	 */
+	public StemCache(int capacity) {
+		super();
+		this.stemmer = new IteratedLovinsStemmer();
+		this.entries = new AtomicReferenceArray<>(Integer.highestOneBit(Math.max(capacity - 1, 1)) << 1);
+		this.hits = new LongAdder();
+		this.misses = new LongAdder();
+	}
+
+	/**
+	 * @return the cache shared by the whole process, of the capacity given by the system property "stem.cache.size",
+	 * 65536 by default
+	 */
+	public static synchronized StemCache getInstance() {
+		if (instance == null) {
+			instance = new StemCache(Integer.parseInt(System.getProperty("stem.cache.size", "65536")));
+		}
+		return instance;
+	}
+
+	@Override
+	public String stem(String word) {
+		int hash = word.hashCode();
+		int slot = (hash ^ (hash >>> 16)) & (this.entries.length() - 1);
+		Entry entry = this.entries.get(slot);
+		if (entry != null && entry.word.equals(word)) {
+			this.hits.increment();
+			return entry.stem;
+		}
+		this.misses.increment();
+		String stem = this.stemmer.stem(word);
+		this.entries.set(slot, new Entry(word, stem));
+		return stem;
+	}
+
+	public long getHits() {
+		return this.hits.sum();
+	}
+
+	public long getMisses() {
+		return this.misses.sum();
+	}
+
+	public double getHitRate() {
+		long hits = this.hits.sum();
+		long lookups = hits + this.misses.sum();
+		return lookups == 0 ? 0 : (double) hits / lookups;
+	}
+
+	@Override
+	public String getRevision() {
+		return this.stemmer.getRevision();
+	}
+
+	@Override
+	public String toString() {
+		return "StemCache{" + "hits=" + this.getHits() + ", misses=" + this.getMisses() + ", hitRate=" + String.format(
+				"%.3f",
+				this.getHitRate()
+		) + ", capacity=" + this.entries.length() + '}';
+	}
+
+	private Object readResolve() {
+		return getInstance();
+	}
+
+	private static class Entry {
+
+		private final String word;
+		private final String stem;
+
+		private Entry(String word, String stem) {
+			this.word = word;
+			this.stem = stem;
+		}
+
+	}
+
+}
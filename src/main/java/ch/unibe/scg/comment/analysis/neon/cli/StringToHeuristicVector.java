@@ -147,14 +147,7 @@ public class StringToHeuristicVector extends SimpleStreamFilter implements Unsup
 	 * @return
 	 */
 	private String category(String heuristicClass) {
-		return this.categories.stream()
-				.filter(c -> this.normalize(c).equals(this.normalize(heuristicClass)))
-				.findFirst()
-				.get();
-	}
-
-	private String normalize(String s) {
-		return s.toLowerCase().replaceAll("[^a-z0-9]", "");
+		return FeaturePipeline.category(this.categories, heuristicClass);
 	}
 
 }
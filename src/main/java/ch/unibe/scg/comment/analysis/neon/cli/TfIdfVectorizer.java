@@ -0,0 +1,197 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Computes the TF-IDF features of a sentence over a fixed dictionary like {@link weka.core.DictionaryBuilder} does
+ * with lower case tokens, the {@link weka.core.stemmers.IteratedLovinsStemmer}, word counts and TF and IDF transforms:
+ * the sentence is split by the delimiters of {@link weka.core.tokenizers.WordTokenizer}, each token is lower cased and
+ * stemmed, and the weight of each word of the dictionary is log(1 + count) * log(1000 / documents), where documents is
+ * the count in the dictionary. Safe to share across threads.
+ * <p>
+ * The words are indexed in an open-addressing table and their IDF is computed once. Tokens are stemmed through the
+ * shared {@link StemCache}, tokens without upper case characters, as in preprocessed sentences, are not lower cased.
+ */
+public class TfIdfVectorizer {
+
+	public static final String PREFIX = "tfidf-";
+	/**
+	 * Number of documents the IDF is relative to, {@link weka.core.DictionaryBuilder} does not restore it from a
+	 * dictionary file, the models were trained with this constant.
+	 */
+	private static final double DOCUMENTS = 1000;
+	private static final String DELIMITERS = " \r\n\t.,;:'\"()?!";
+	private static final boolean[] DELIMITER = new boolean[128];
+
+	static {
+		for (char c : DELIMITERS.toCharArray()) {
+			DELIMITER[c] = true;
+		}
+	}
+
+	private final String[] words;
+	private final double[] idf;
+	/**
+	 * Open-addressing table of word index + 1, 0 if the slot is empty.
+	 */
+	private final int[] table;
+	private final int[] hashes;
+	private final StemCache stems;
+
+	/**
+	 * @param dictionary lines of "[word],[documents]" as written by {@link weka.core.DictionaryBuilder}
+	 */
+	public TfIdfVectorizer(String dictionary) throws IOException {
+		super();
+		List<String> words = new ArrayList<>();
+		List<Integer> documents = new ArrayList<>();
+		try (BufferedReader reader = new BufferedReader(new StringReader(dictionary))) {
+			String line;
+			while ((line = reader.readLine()) != null) {
+				if (line.startsWith("@@@") && line.endsWith("@@@")) {
+					// average document length, only needed for normalization
+					continue;
+				}
+				int comma = line.lastIndexOf(',');
+				if (comma <= 0) {
+					throw new IOException(String.format("Dictionary entry %s has no document count", line));
+				}
+				int count;
+				try {
+					count = Integer.parseInt(line.substring(comma + 1).trim());
+				} catch (NumberFormatException e) {
+					throw new IOException(String.format("Dictionary entry %s has no document count", line), e);
+				}
+				words.add(line.substring(0, comma));
+				documents.add(count);
+			}
+		}
+		this.words = words.toArray(new String[0]);
+		this.idf = new double[this.words.length];
+		this.table = new int[Integer.highestOneBit(Math.max(this.words.length, 1) * 4)];
+		this.hashes = new int[this.words.length];
+		for (int i = 0; i < this.words.length; i = i + 1) {
+			this.idf[i] = Math.log(DOCUMENTS / documents.get(i));
+			this.hashes[i] = this.words[i].hashCode();
+			if (this.index(this.words[i]) >= 0) {
+				throw new IOException(String.format("Dictionary entry %s is duplicated", this.words[i]));
+			}
+			int slot = this.hashes[i] & (this.table.length - 1);
+			while (this.table[slot] != 0) {
+				slot = (slot + 1) & (this.table.length - 1);
+			}
+			this.table[slot] = i + 1;
+		}
+		this.stems = StemCache.getInstance();
+	}
+
+	/**
+	 * @return the words of the dictionary, the features in order
+	 */
+	public List<String> getWords() {
+		return List.of(this.words);
+	}
+
+	/**
+	 * @return the TF-IDF features of the sentence, ordered by index
+	 */
+	public Terms vectorize(String sentence) {
+		int[] indices = new int[8];
+		int n = 0;
+		int length = sentence.length();
+		int start = 0;
+		while (start < length) {
+			while (start < length && this.isDelimiter(sentence.charAt(start))) {
+				start = start + 1;
+			}
+			int end = start;
+			boolean lower = true;
+			while (end < length && !this.isDelimiter(sentence.charAt(end))) {
+				char c = sentence.charAt(end);
+				lower = lower && (c < 'A' || c > 'Z') && c < 128;
+				end = end + 1;
+			}
+			if (end > start) {
+				String token = sentence.substring(start, end);
+				int index = this.index(this.stems.stem(lower ? token : token.toLowerCase()));
+				if (index >= 0) {
+					if (n == indices.length) {
+						indices = Arrays.copyOf(indices, n * 2);
+					}
+					indices[n] = index;
+					n = n + 1;
+				}
+			}
+			start = end;
+		}
+		Arrays.sort(indices, 0, n);
+		int size = 0;
+		double[] weights = new double[n];
+		for (int i = 0; i < n; ) {
+			int j = i + 1;
+			while (j < n && indices[j] == indices[i]) {
+				j = j + 1;
+			}
+			indices[size] = indices[i];
+			weights[size] = Math.log((double) (j - i) + 1) * this.idf[indices[i]];
+			size = size + 1;
+			i = j;
+		}
+		return new Terms(size, indices, weights);
+	}
+
+	private boolean isDelimiter(char c) {
+		return c < DELIMITER.length && DELIMITER[c];
+	}
+
+	/**
+	 * @return index of the word, -1 if it is not in the dictionary
+	 */
+	private int index(String word) {
+		int hash = word.hashCode();
+		int slot = hash & (this.table.length - 1);
+		while (this.table[slot] != 0) {
+			int i = this.table[slot] - 1;
+			if (this.hashes[i] == hash && this.words[i].equals(word)) {
+				return i;
+			}
+			slot = (slot + 1) & (this.table.length - 1);
+		}
+		return -1;
+	}
+
+	/**
+	 * Sparse TF-IDF features, the weight of the i-th feature is {@link #weight(int)} of the word {@link #index(int)}.
+	 */
+	public static class Terms {
+
+		private final int size;
+		private final int[] indices;
+		private final double[] weights;
+
+		private Terms(int size, int[] indices, double[] weights) {
+			this.size = size;
+			this.indices = indices;
+			this.weights = weights;
+		}
+
+		public int size() {
+			return this.size;
+		}
+
+		public int index(int i) {
+			return this.indices[i];
+		}
+
+		public double weight(int i) {
+			return this.weights[i];
+		}
+
+	}
+
+}
@@ -1,111 +1,398 @@
 package ch.unibe.scg.comment.analysis.neon.cli.task;
 
-import ch.unibe.scg.comment.analysis.neon.cli.InstancesBuilder;
+import ch.unibe.scg.comment.analysis.neon.cli.ClassifierRegistry;
+import ch.unibe.scg.comment.analysis.neon.cli.CommentDeduplicator;
+import ch.unibe.scg.comment.analysis.neon.cli.CommentDeduplicator.Representative;
+import ch.unibe.scg.comment.analysis.neon.cli.CommentDeduplicator.Signature;
+import ch.unibe.scg.comment.analysis.neon.cli.CommentLexer;
+import ch.unibe.scg.comment.analysis.neon.cli.CompiledForest;
+import ch.unibe.scg.comment.analysis.neon.cli.FeaturePipeline;
+import ch.unibe.scg.comment.analysis.neon.cli.HeuristicsXml;
+import ch.unibe.scg.comment.analysis.neon.cli.ModelBundle;
 import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString;
 import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
-import org.neon.pathsFinder.engine.Parser;
-import org.neon.pathsFinder.model.Sentence;
+import ch.unibe.scg.comment.analysis.neon.cli.ParseCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ParserPool;
+import ch.unibe.scg.comment.analysis.neon.cli.ResultCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ResultSink;
+import ch.unibe.scg.comment.analysis.neon.cli.SentenceSplitter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.classifiers.Classifier;
 import weka.core.Attribute;
 import weka.core.Instances;
-import weka.core.SerializationHelper;
 
-import java.io.File;
-import java.io.FileOutputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.OutputStream;
-import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.SortedMap;
 import java.util.TreeMap;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.stream.Collectors;
 
 public class T12Classify {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(T12Classify.class);
+	private static final int COMMENTS = 256;
+
+	/**
+	 * Labels the files one after the other, writing their labels to standard output as NDJSON, see
+	 * {@link #labelFiles(List, ResultSink)}.
+	 *
+	 * @param args data source and files to label
+	 */
 	public static void main(String[] args) throws Exception {
 		String data = args[0];
-		String source = Files.readString(Paths.get(args[1]));
 		T12Classify task = new T12Classify(data);
-		SortedMap<Range, List<String>> labels = task.label(source);
-		System.out.println(labels);
-	}
-
-	private static final Map<String, Pattern> PATTERNS = Map.of(
-			"java",
-			Pattern.compile("//.*|(?s)/\\*.*?\\*/"),
-			"pharo",
-			Pattern.compile("(?s)(\"(?:\\\\[^\"]|\\\\\"|.)*?\")"),
-			"python",
-			Pattern.compile("#.*|(?s)(['\"])\1\1(.*?)\1{3}")
-	);
+		List<Path> paths = new ArrayList<>();
+		for (int i = 1; i < args.length; i = i + 1) {
+			paths.add(Paths.get(args[i]));
+		}
+		try (ResultSink sink = ResultSink.of("ndjson", System.out, Map.of(data, task.getCategories()))) {
+			task.labelFiles(paths, sink);
+		}
+	}
+
 	private final String data;
-	private final File heuristics;
-	private final File dictionary;
 	private final List<String> categories;
-	private final Map<String, Classifier> classifiers;
-	private final Pattern commentPattern;
+	private final ParserPool parsers;
+	private final FeaturePipeline pipeline;
+	private final ClassifierRegistry classifiers;
+	// categories a classifier is shipped for, in order of categories
+	private final List<String> classified;
+	private final ExecutorService executor;
+	private final CommentLexer lexer;
+	// split sentences as NEON does, by parsing, instead of by rules
+	private final boolean parseSentences;
+	// categories of sentences classified before, null if not caching
+	private final ResultCache cache;
+	private final String fingerprint;
+	// models of the data source, null if read from the class path
+	private final ModelBundle bundle;
+	// reuses the labels of near-duplicate comments, null if not deduplicating
+	private final CommentDeduplicator deduplicator;
 
 	public T12Classify(String data) throws Exception {
+		this(data, ClassifierRegistry.getInstance(), ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param classifiers registry to load classifiers from on first use, may be shared with other instances
+	 * @param executor runs the classifiers of the categories in parallel
+	 */
+	public T12Classify(String data, ClassifierRegistry classifiers, ExecutorService executor) throws Exception {
 		this.data = data;
-		this.heuristics = Files.createTempFile("heuristics", ".xml").toFile();
-		try (OutputStream output = new FileOutputStream(this.heuristics)) {
-			T12Classify.class.getClassLoader()
-					.getResourceAsStream(String.format("classifier/%s/heuristics.xml", this.data))
-					.transferTo(output);
-		}
-		this.dictionary = Files.createTempFile("dictionary", ".csv").toFile();
-		try (OutputStream output = new FileOutputStream(this.dictionary)) {
-			T12Classify.class.getClassLoader()
-					.getResourceAsStream(String.format("classifier/%s/dictionary.csv", this.data))
-					.transferTo(output);
-		}
-		this.categories = Utility.resource(String.format("classifier/%s/categories.csv", this.data))
-				.lines()
+		this.classifiers = classifiers;
+		this.executor = executor;
+		this.bundle = ModelBundle.getInstance(this.data);
+		this.categories = this.read("categories.csv").lines().collect(Collectors.toList());
+		this.parsers = ParserPool.getInstance();
+		try (InputStream heuristics = this.resource("heuristics.xml")) {
+			// as the classifiers were trained, see T6PrepareDatasets
+			this.pipeline = new FeaturePipeline(this.categories,
+					HeuristicsXml.read(heuristics),
+					this.read("dictionary.csv"),
+					this.parsers,
+					Boolean.getBoolean("heuristics.numeric")
+			);
+		}
+		this.classified = this.categories.stream()
+				.filter(category -> this.classifiers.contains(this.data, category))
 				.collect(Collectors.toList());
-		this.classifiers = new HashMap<>();
-		for (String category : this.categories) {
-			Classifier classifier = (Classifier) SerializationHelper.read(T12Classify.class.getClassLoader()
-					.getResourceAsStream(String.format("classifier/%s/%s.classifier", this.data, category)));
-			this.classifiers.put(category, classifier);
+		this.lexer = CommentLexer.of(this.data);
+		this.parseSentences = "corenlp".equals(System.getProperty("sentence.splitter"));
+		this.cache = ResultCache.getInstance();
+		this.fingerprint = this.cache == null ? null : this.fingerprint();
+		String threshold = System.getProperty("dedup.threshold");
+		this.deduplicator = threshold == null ? null : new CommentDeduplicator(Double.parseDouble(threshold),
+				Integer.getInteger("dedup.capacity", 100000)
+		);
+	}
+
+	/**
+	 * @return hash of the data source, the parser version and all resources the categories of a sentence depend on, so
+	 * that cached categories are not looked up once any of them changes
+	 */
+	private String fingerprint() throws Exception {
+		MessageDigest digest = MessageDigest.getInstance("SHA-256");
+		digest.update(String.format("%s\n%s\n", this.data, ParseCache.VERSION).getBytes(StandardCharsets.UTF_8));
+		if (this.bundle != null) {
+			digest.update(this.bundle.getVersion().getBytes(StandardCharsets.UTF_8));
+			return HexFormat.of().formatHex(digest.digest());
+		}
+		List<String> names = new ArrayList<>(List.of("categories.csv", "heuristics.xml", "dictionary.csv"));
+		for (String category : this.classified) {
+			names.add(String.format("%s.classifier", category));
 		}
-		this.commentPattern = PATTERNS.get(this.data);
+		for (String name : names) {
+			digest.update(name.getBytes(StandardCharsets.UTF_8));
+			try (InputStream input = new DigestInputStream(this.resource(name), digest)) {
+				input.transferTo(OutputStream.nullOutputStream());
+			}
+		}
+		return HexFormat.of().formatHex(digest.digest());
+	}
+
+	/**
+	 * @return the resource of the data source, from its bundle if bundled
+	 */
+	private InputStream resource(String name) throws IOException {
+		if (this.bundle != null) {
+			return this.bundle.stream(name);
+		}
+		String path = String.format("classifier/%s/%s", this.data, name);
+		InputStream input = T12Classify.class.getClassLoader().getResourceAsStream(path);
+		if (input == null) {
+			throw new FileNotFoundException(String.format("No resource %s", path));
+		}
+		return input;
+	}
+
+	private String read(String name) throws IOException {
+		try (InputStream input = this.resource(name)) {
+			return new String(input.readAllBytes(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * @return categories of the data source, in order of the bitmasks written to {@link ResultSink}s
+	 */
+	public List<String> getCategories() {
+		return this.categories;
+	}
+
+	/**
+	 * @return deduplicator of near-duplicate comments, enabled by the system property "dedup.threshold", null if not
+	 * deduplicating
+	 */
+	public CommentDeduplicator getDeduplicator() {
+		return this.deduplicator;
 	}
 
 	public SortedMap<Range, List<String>> label(String source) throws Exception {
-		SortedMap<Range, List<String>> result = new TreeMap<>();
-		Map<Range, String> comments = this.comments(source);
-		for (Map.Entry<Range, String> comment : comments.entrySet()) {
-			int offset = comment.getKey().start;
-			for (Map.Entry<Range, List<String>> sentence : this.classify(comment.getValue()).entrySet()) {
-				result.put(sentence.getKey().add(offset, offset), sentence.getValue());
+		return this.labelAll(List.of(source)).get(0);
+	}
+
+	/**
+	 * Labels the files one after the other, the comments of consecutive files are classified together in chunks of
+	 * {@value #COMMENTS} comments. The labels of a chunk are written to the sink, and the sink flushed, as soon as the
+	 * chunk is classified, in order of the files and of the sentences within a file, so that only the comments of a
+	 * chunk and the file being read are held at once.
+	 */
+	public void labelFiles(List<Path> paths, ResultSink sink) throws Exception {
+		// file, range and text of each comment of the chunk
+		List<Path> files = new ArrayList<>();
+		List<Range> comments = new ArrayList<>();
+		List<String> originals = new ArrayList<>();
+		for (Path path : paths) {
+			for (Map.Entry<Range, String> comment : this.comments(Utility.read(path)).entrySet()) {
+				files.add(path);
+				comments.add(comment.getKey());
+				originals.add(comment.getValue());
+				if (originals.size() == COMMENTS) {
+					this.write(files, comments, originals, sink);
+				}
+			}
+		}
+		this.write(files, comments, originals, sink);
+	}
+
+	/**
+	 * Classifies the comments of the chunk, writes their labels to the sink and clears the chunk.
+	 */
+	private void write(List<Path> files, List<Range> comments, List<String> originals, ResultSink sink)
+			throws Exception {
+		if (originals.isEmpty()) {
+			return;
+		}
+		List<SortedMap<Range, List<String>>> classified = this.classifyAll(originals);
+		for (int i = 0; i < classified.size(); i = i + 1) {
+			int offset = comments.get(i).start;
+			for (Map.Entry<Range, List<String>> sentence : classified.get(i).entrySet()) {
+				long categories = ResultSink.mask(this.categories, sentence.getValue());
+				sink.write(files.get(i), this.data, sentence.getKey().add(offset, offset), categories);
+			}
+		}
+		sink.flush();
+		files.clear();
+		comments.clear();
+		originals.clear();
+	}
+
+	/**
+	 * Labels all sources at once, classifying the comments of all sources together.
+	 *
+	 * @return labels of each source, in order of the argument
+	 */
+	public List<SortedMap<Range, List<String>>> labelAll(List<? extends CharSequence> sources) throws Exception {
+		List<SortedMap<Range, String>> comments = new ArrayList<>();
+		List<String> originals = new ArrayList<>();
+		for (CharSequence source : sources) {
+			SortedMap<Range, String> sourceComments = this.comments(source);
+			comments.add(sourceComments);
+			originals.addAll(sourceComments.values());
+		}
+		List<SortedMap<Range, List<String>>> classified = this.classifyAll(originals);
+		List<SortedMap<Range, List<String>>> result = new ArrayList<>();
+		int i = 0;
+		for (SortedMap<Range, String> sourceComments : comments) {
+			SortedMap<Range, List<String>> labels = new TreeMap<>();
+			for (Range comment : sourceComments.keySet()) {
+				int offset = comment.start;
+				for (Map.Entry<Range, List<String>> sentence : classified.get(i).entrySet()) {
+					labels.put(sentence.getKey().add(offset, offset), sentence.getValue());
+				}
+				i = i + 1;
 			}
+			result.add(labels);
 		}
 		return result;
 	}
 
-	private SortedMap<Range, String> comments(String source) {
+	private SortedMap<Range, String> comments(CharSequence source) {
 		SortedMap<Range, String> result = new TreeMap<>();
-		Matcher matcher = this.commentPattern.matcher(source);
-		while (matcher.find()) {
-			result.put(new Range(matcher.start(), matcher.end()), matcher.group());
+		for (Range range : this.lexer.comments(source)) {
+			result.put(range, source.subSequence(range.start, range.end).toString());
 		}
 		return result;
 	}
 
 	public SortedMap<Range, List<String>> classify(String original) throws Exception {
-		NormalizedString normalized = new NormalizedString(original);
-		InstancesBuilder instancesBuilder = this.instancesBuilder();
-		List<Range> rangesInNormalized = this.rangesInNormalized(normalized);
-		List<Range> rangesInOriginal = this.rangesInOriginal(normalized, rangesInNormalized);
-		for (Range range : rangesInNormalized) {
-			instancesBuilder.add(range.in(normalized.normalized), false);
-		}
-		Instances instances = instancesBuilder.build();
+		return this.classifyAll(List.of(original)).get(0);
+	}
+
+	/**
+	 * Classifies all comments at once, the sentences of all comments are vectorized and classified together. If
+	 * deduplicating, near-duplicates of a comment classified before, or of a comment in the argument, get the labels of
+	 * that comment, sentence by sentence.
+	 *
+	 * @return labels of each comment, in iteration order of the argument
+	 */
+	public List<SortedMap<Range, List<String>>> classifyAll(Collection<String> originals) throws Exception {
+		List<String> sentences = new ArrayList<>();
+		List<SortedMap<Range, List<String>>> results = new ArrayList<>();
+		// labels of each sentence, in order of sentences
+		List<List<String>> labels = new ArrayList<>();
+		// identifies the representatives of this call to the deduplicator
+		Object owner = new Object();
+		// comments of this call representing their near-duplicates, and the index of their first sentence
+		Map<Representative, Integer> representatives = new LinkedHashMap<>();
+		// labels of each sentence of near-duplicates, by the representative to copy them from
+		List<Map.Entry<Representative, List<List<String>>>> duplicates = new ArrayList<>();
+		for (String original : originals) {
+			NormalizedString normalized = new NormalizedString(original);
+			List<Range> rangesInNormalized = this.rangesInNormalized(normalized);
+			List<Range> rangesInOriginal = this.rangesInOriginal(normalized, rangesInNormalized);
+			SortedMap<Range, List<String>> result = new TreeMap<>();
+			List<String> commentSentences = new ArrayList<>();
+			List<List<String>> commentLabels = new ArrayList<>();
+			for (int i = 0; i < rangesInNormalized.size(); i = i + 1) {
+				commentSentences.add(rangesInNormalized.get(i).in(normalized.normalized));
+				commentLabels.add(result.computeIfAbsent(rangesInOriginal.get(i), r -> new ArrayList<>()));
+			}
+			results.add(result);
+			if (this.deduplicator != null && !commentSentences.isEmpty()) {
+				Signature signature = this.deduplicator.signature(commentSentences);
+				Representative representative = this.deduplicator.find(signature, owner);
+				if (representative != null) {
+					duplicates.add(Map.entry(representative, commentLabels));
+					continue;
+				}
+				representatives.put(this.deduplicator.add(signature, owner), sentences.size());
+			}
+			sentences.addAll(commentSentences);
+			labels.addAll(commentLabels);
+		}
+		// bitmask of the categories of each sentence, in order of sentences
+		long[] masks;
+		try {
+			masks = this.masks(sentences);
+		} catch (Exception e) {
+			for (Representative representative : representatives.keySet()) {
+				this.deduplicator.remove(representative);
+			}
+			throw e;
+		}
+		for (Map.Entry<Representative, Integer> representative : representatives.entrySet()) {
+			int start = representative.getValue();
+			int end = start + representative.getKey().getSentences();
+			this.deduplicator.complete(representative.getKey(), Arrays.copyOfRange(masks, start, end));
+		}
+		for (int i = 0; i < masks.length; i = i + 1) {
+			this.decode(masks[i], labels.get(i));
+		}
+		for (Map.Entry<Representative, List<List<String>>> duplicate : duplicates) {
+			long[] duplicateMasks = duplicate.getKey().getMasks();
+			for (int i = 0; i < duplicateMasks.length; i = i + 1) {
+				this.decode(duplicateMasks[i], duplicate.getValue().get(i));
+			}
+		}
+		return results;
+	}
+
+	/**
+	 * @return bitmask of the categories of each sentence, looked up in the cache if caching, else classified
+	 */
+	private long[] masks(List<String> sentences) throws Exception {
+		long[] masks = new long[sentences.size()];
+		// sentences not cached, in instance order
+		List<Integer> misses = new ArrayList<>();
+		for (int i = 0; i < sentences.size(); i = i + 1) {
+			Long mask = this.lookUp(sentences.get(i));
+			if (mask == null) {
+				misses.add(i);
+			} else {
+				masks[i] = mask;
+			}
+		}
+		if (!misses.isEmpty()) {
+			// records the use of the hits with the categories of the misses
+			this.classify(sentences, misses, masks);
+		} else if (this.cache != null) {
+			try {
+				this.cache.flush();
+			} catch (Exception e) {
+				LOGGER.warn("{} sentences failed to record their use", sentences.size(), e);
+			}
+		}
+		return masks;
+	}
+
+	private void decode(long mask, List<String> labels) {
+		for (int c = 0; c < this.categories.size(); c = c + 1) {
+			if ((mask & 1L << c) != 0) {
+				labels.add(this.categories.get(c));
+			}
+		}
+	}
+
+	/**
+	 * Classifies the missed sentences and sets their bits in the masks, caching them if caching.
+	 */
+	private void classify(List<String> sentences, List<Integer> misses, long[] masks) throws Exception {
+		List<String> texts = new ArrayList<>();
+		for (int miss : misses) {
+			texts.add(sentences.get(miss));
+		}
+		Instances instances = this.pipeline.vectorize(texts);
 		// remove categories
 		for (int i = instances.numAttributes() - 1; i >= 0; i = i - 1) {
 			String name = instances.attribute(i).name();
@@ -116,40 +403,92 @@ public class T12Classify {
 		// add class
 		instances.insertAttributeAt(new Attribute("result", List.of("0", "1")), instances.numAttributes());
 		instances.setClassIndex(instances.numAttributes() - 1);
-		SortedMap<Range, List<String>> results = new TreeMap<>();
-		for (Range range : rangesInOriginal) {
-			results.put(range, new ArrayList<>());
+		List<Callable<boolean[]>> predictions = new ArrayList<>();
+		for (String category : this.classified) {
+			predictions.add(() -> this.predict(category, instances));
 		}
-		for (Map.Entry<String, Classifier> entry : this.classifiers.entrySet()) {
-			String category = entry.getKey();
-			Classifier classifier = entry.getValue();
-			for (int i = 0; i < instances.numInstances(); i = i + 1) {
-				double result = classifier.classifyInstance(instances.instance(i));
-				if (result > 0) {
-					results.get(rangesInOriginal.get(i)).add(category);
+		List<Future<boolean[]>> futures = this.executor.invokeAll(predictions);
+		// merge in order of categories, independent of completion order
+		for (int c = 0; c < this.classified.size(); c = c + 1) {
+			boolean[] prediction;
+			try {
+				prediction = futures.get(c).get();
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+			}
+			long bit = 1L << this.categories.indexOf(this.classified.get(c));
+			for (int i = 0; i < prediction.length; i = i + 1) {
+				if (prediction[i]) {
+					masks[misses.get(i)] = masks[misses.get(i)] | bit;
 				}
 			}
 		}
-		return results;
+		if (this.cache != null) {
+			Map<String, Long> classified = new HashMap<>();
+			for (int miss : misses) {
+				classified.put(sentences.get(miss), masks[miss]);
+			}
+			try {
+				this.cache.put(this.fingerprint, classified);
+			} catch (Exception e) {
+				LOGGER.warn("{} sentences failed to cache", classified.size(), e);
+			}
+		}
 	}
 
-	public List<Range> rangesInNormalized(NormalizedString normalized) {
-		List<Range> ranges = new ArrayList<>();
-		int i = 0;
-		for (Sentence sentence : Parser.getInstance().parse(normalized.normalized)) {
-			i = normalized.normalized.indexOf(sentence.getText().charAt(0), i);
-			ranges.add(new Range(i, i + sentence.getText().length()));
-			i = i + sentence.getText().length();
+	/**
+	 * @return the cached bitmask of the categories of the sentence, null if not cached or not caching
+	 */
+	private Long lookUp(String sentence) {
+		if (this.cache == null) {
+			return null;
+		}
+		try {
+			return this.cache.get(this.fingerprint, sentence);
+		} catch (Exception e) {
+			LOGGER.warn("{} failed to look up, classifying", sentence, e);
+			return null;
 		}
-		return ranges;
 	}
 
-	public List<Range> rangesInOriginal(NormalizedString normalized, List<Range> rangesInNormalized) {
-		return rangesInNormalized.stream().map(normalized::normalizedToOriginal).collect(Collectors.toList());
+	/**
+	 * Weka does not guarantee classifiers to be thread-safe, a classifier is thus used by a single thread at a time,
+	 * also across instances sharing the registry. Compiled forests are immutable and used without locking.
+	 *
+	 * @return whether each instance is in the category
+	 */
+	private boolean[] predict(String category, Instances instances) throws Exception {
+		Classifier classifier = this.classifiers.get(this.data, category);
+		boolean[] result = new boolean[instances.numInstances()];
+		if (classifier instanceof CompiledForest) {
+			CompiledForest forest = (CompiledForest) classifier;
+			double[] distribution = new double[forest.numClasses()];
+			for (int i = 0; i < instances.numInstances(); i = i + 1) {
+				result[i] = forest.classify(instances.instance(i), distribution) > 0;
+			}
+			return result;
+		}
+		synchronized (classifier) {
+			for (int i = 0; i < instances.numInstances(); i = i + 1) {
+				result[i] = classifier.classifyInstance(instances.instance(i)) > 0;
+			}
+		}
+		return result;
 	}
 
-	private InstancesBuilder instancesBuilder() {
-		return new InstancesBuilder("dataset", this.categories, this.heuristics, this.dictionary);
+	/**
+	 * Splits sentences by {@link SentenceSplitter} rules, or by parsing if the system property "sentence.splitter" is
+	 * "corenlp".
+	 */
+	public List<Range> rangesInNormalized(NormalizedString normalized) throws InterruptedException {
+		if (this.parseSentences) {
+			return SentenceSplitter.split(this.parsers, normalized.normalized);
+		}
+		return SentenceSplitter.split(normalized.normalized);
+	}
+
+	public List<Range> rangesInOriginal(NormalizedString normalized, List<Range> rangesInNormalized) {
+		return rangesInNormalized.stream().map(normalized::normalizedToOriginal).collect(Collectors.toList());
 	}
 
 }
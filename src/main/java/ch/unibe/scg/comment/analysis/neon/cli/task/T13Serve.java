@@ -0,0 +1,332 @@
+package ch.unibe.scg.comment.analysis.neon.cli.task;
+
+import ch.unibe.scg.comment.analysis.neon.cli.ClassifierRegistry;
+import ch.unibe.scg.comment.analysis.neon.cli.CommentDeduplicator;
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+import ch.unibe.scg.comment.analysis.neon.cli.ParserPool;
+import ch.unibe.scg.comment.analysis.neon.cli.ResultCache;
+import ch.unibe.scg.comment.analysis.neon.cli.StemCache;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps a {@link T12Classify} per language warm and serves it on a localhost HTTP endpoint:
+ * <ul>
+ *     <li>{@code POST /label?data=java} labels the source code in the body</li>
+ *     <li>{@code POST /classify?data=java} classifies the comment in the body</li>
+ *     <li>{@code POST /label-batch?data=java} labels the sources in the body together, each preceded by a line of
+ *     {@code [name]\t[length]}, the name to prefix its labels with and the length of the source in UTF-8 bytes</li>
+ *     <li>{@code GET /stats} reports the hits, misses and load time of the shared {@link ClassifierRegistry} and the
+ *     waits and parse times of the shared {@link ParserPool}, including the hits of the parse cache, and the hits of
+ *     the shared {@link ResultCache} and of the {@link CommentDeduplicator} of each language, if any, and the hits of
+ *     the shared {@link StemCache}</li>
+ * </ul>
+ * Each labelled sentence is answered as one line of {@code [start]\t[end]\t[category],[category]}, prefixed with
+ * {@code [name]\t} for batches. Requests whose {@code Host} is not loopback are rejected, so that web pages cannot
+ * reach the endpoint by rebinding their domain to localhost. Bodies larger than the system property
+ * "serve.body.limit", 16 MiB by default, are rejected with 413. Requests are handled by a fixed pool of workers, at
+ * most {@code backlog} requests wait for a worker, any further request blocks the accepting thread until a worker is
+ * available. Classifiers are loaded on first use, see {@link ClassifierRegistry} for bounding their memory.
+ */
+public class T13Serve {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(T13Serve.class);
+	private final List<String> data;
+	private final int port;
+	private final int threads;
+	private final int backlog;
+	private final int limit;
+	private final Map<String, T12Classify> tasks;
+
+	public T13Serve(List<String> data, int port, int threads, int backlog) {
+		super();
+		this.data = data;
+		this.port = port;
+		this.threads = threads;
+		this.backlog = backlog;
+		this.limit = Integer.getInteger("serve.body.limit", 16 * 1024 * 1024);
+		this.tasks = new HashMap<>();
+	}
+
+	public void run() throws Exception {
+		ClassifierRegistry classifiers = ClassifierRegistry.getInstance();
+		ParserPool parsers = ParserPool.getInstance();
+		ResultCache results = ResultCache.getInstance();
+		StemCache stems = StemCache.getInstance();
+		for (String data : this.data) {
+			this.tasks.put(data, new T12Classify(data, classifiers, ForkJoinPool.commonPool()));
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		Semaphore permits = new Semaphore(this.threads + this.backlog);
+		HttpServer server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), this.port), 0);
+		server.setExecutor(command -> {
+			permits.acquireUninterruptibly();
+			try {
+				executor.execute(() -> {
+					try {
+						command.run();
+					} finally {
+						permits.release();
+					}
+				});
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		});
+		server.createContext("/label",
+				exchange -> this.handle(exchange, (task, body) -> this.lines(task.label(this.string(body))))
+		);
+		server.createContext("/classify",
+				exchange -> this.handle(exchange, (task, body) -> this.lines(task.classify(this.string(body))))
+		);
+		server.createContext("/label-batch", exchange -> this.handle(exchange, (task, body) -> {
+			Map<String, String> sources = this.sources(body);
+			List<SortedMap<Range, List<String>>> labels = task.labelAll(new ArrayList<>(sources.values()));
+			StringBuilder builder = new StringBuilder();
+			int i = 0;
+			for (String name : sources.keySet()) {
+				for (String line : this.lines(labels.get(i)).split("\n")) {
+					if (!line.isEmpty()) {
+						builder.append(name).append('\t').append(line).append('\n');
+					}
+				}
+				i = i + 1;
+			}
+			return builder.toString();
+		}));
+		server.createContext("/stats", exchange -> {
+			try {
+				if (!isLoopback(exchange.getRequestHeaders().getFirst("Host"))) {
+					this.respond(exchange, 403, "loopback host required\n");
+					return;
+				}
+				if (!"GET".equals(exchange.getRequestMethod())) {
+					this.respond(exchange, 405, "GET required\n");
+					return;
+				}
+				StringBuilder builder = new StringBuilder(String.format("%s\n%s\n%s\n%s\n",
+						classifiers,
+						parsers,
+						results,
+						stems
+				));
+				for (Map.Entry<String, T12Classify> task : this.tasks.entrySet()) {
+					if (task.getValue().getDeduplicator() != null) {
+						builder.append(String.format("%s %s\n", task.getKey(), task.getValue().getDeduplicator()));
+					}
+				}
+				this.respond(exchange, 200, builder.toString());
+			} finally {
+				exchange.close();
+			}
+		});
+		CountDownLatch stopped = new CountDownLatch(1);
+		Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+			server.stop(1);
+			executor.shutdown();
+			LOGGER.info("{}", classifiers);
+			LOGGER.info("{}", parsers);
+			LOGGER.info("{}", results);
+			LOGGER.info("{}", stems);
+			stopped.countDown();
+		}));
+		server.start();
+		LOGGER.info("{} serving on {}", this.data, server.getAddress());
+		stopped.await();
+		executor.awaitTermination(1, TimeUnit.MINUTES);
+	}
+
+	private void handle(HttpExchange exchange, Handler handler) throws IOException {
+		try {
+			if (!isLoopback(exchange.getRequestHeaders().getFirst("Host"))) {
+				this.respond(exchange, 403, "loopback host required\n");
+				return;
+			}
+			if (!"POST".equals(exchange.getRequestMethod())) {
+				this.respond(exchange, 405, "POST required\n");
+				return;
+			}
+			String data = this.data(exchange);
+			T12Classify task = this.tasks.get(data);
+			if (task == null) {
+				this.respond(exchange, 400, String.format("data source %s is not served\n", data));
+				return;
+			}
+			byte[] body = this.body(exchange);
+			if (body == null) {
+				this.respond(exchange, 413, String.format("body larger than %d bytes\n", this.limit));
+				return;
+			}
+			this.respond(exchange, 200, handler.handle(task, body));
+		} catch (IllegalArgumentException e) {
+			// malformed bodies, such as batches whose lengths do not match their sources
+			this.respond(exchange, 400, String.format("%s\n", e.getMessage()));
+		} catch (Exception e) {
+			LOGGER.warn("{} {} failed", exchange.getRequestMethod(), exchange.getRequestURI(), e);
+			this.respond(exchange, 500, String.format("%s\n", e.getMessage()));
+		} finally {
+			exchange.close();
+		}
+	}
+
+	/**
+	 * @return the body, null if it is larger than the limit
+	 */
+	private byte[] body(HttpExchange exchange) throws IOException {
+		String length = exchange.getRequestHeaders().getFirst("Content-Length");
+		if (length != null && Long.parseLong(length.trim()) > this.limit) {
+			return null;
+		}
+		// chunked bodies do not announce their length
+		byte[] body = exchange.getRequestBody().readNBytes(this.limit + 1);
+		return body.length > this.limit ? null : body;
+	}
+
+	/**
+	 * Browsers send the name of the page for rebound domains, so names are not resolved, only "localhost" and loopback
+	 * literals are accepted.
+	 *
+	 * @param host value of the Host header, with an optional port
+	 * @return whether the host is "localhost", "::1" or an IPv4 literal in 127.0.0.0/8
+	 */
+	public static boolean isLoopback(String host) {
+		if (host == null) {
+			return false;
+		}
+		host = host.trim().toLowerCase();
+		if (host.startsWith("[")) {
+			int end = host.indexOf(']');
+			if (end < 0 || !(end == host.length() - 1 || host.charAt(end + 1) == ':')) {
+				return false;
+			}
+			host = host.substring(1, end);
+			return host.equals("::1") || host.equals("0:0:0:0:0:0:0:1");
+		}
+		if (host.indexOf(':') >= 0) {
+			host = host.substring(0, host.indexOf(':'));
+		}
+		if (host.equals("localhost")) {
+			return true;
+		}
+		String[] octets = host.split("\\.", -1);
+		if (octets.length != 4 || !octets[0].equals("127")) {
+			return false;
+		}
+		for (String octet : octets) {
+			if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(c -> c >= '0' && c <= '9')) {
+				return false;
+			}
+			if (Integer.parseInt(octet) > 255) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param body sources, each preceded by a line of {@code [name]\t[length]}, the length in UTF-8 bytes
+	 * @return the sources by name, in order of the body
+	 */
+	private Map<String, String> sources(byte[] body) {
+		Map<String, String> sources = new LinkedHashMap<>();
+		int i = 0;
+		while (i < body.length) {
+			int end = i;
+			while (end < body.length && body[end] != '\n') {
+				end = end + 1;
+			}
+			String header = this.string(Arrays.copyOfRange(body, i, end));
+			int tab = header.lastIndexOf('\t');
+			if (end == body.length || tab < 0) {
+				throw new IllegalArgumentException(String.format("source header %s is not [name]\\t[length]", header));
+			}
+			int length = Integer.parseInt(header.substring(tab + 1).trim());
+			i = end + 1;
+			if (length < 0 || length > body.length - i) {
+				throw new IllegalArgumentException(String.format("source %s is shorter than %d bytes",
+						header.substring(0, tab),
+						length
+				));
+			}
+			sources.put(header.substring(0, tab), new String(body, i, length, StandardCharsets.UTF_8));
+			i = i + length;
+			// sources may be followed by a new line
+			if (i < body.length && body[i] == '\n') {
+				i = i + 1;
+			}
+		}
+		return sources;
+	}
+
+	private String string(byte[] bytes) {
+		return new String(bytes, StandardCharsets.UTF_8);
+	}
+
+	private String data(HttpExchange exchange) {
+		String query = exchange.getRequestURI().getRawQuery();
+		if (query != null) {
+			for (String parameter : query.split("&")) {
+				String[] parts = parameter.split("=", 2);
+				if (parts.length == 2 && "data".equals(parts[0])) {
+					return URLDecoder.decode(parts[1], StandardCharsets.UTF_8);
+				}
+			}
+		}
+		// a single data source does not need to be named
+		return this.data.size() == 1 ? this.data.get(0) : null;
+	}
+
+	private void respond(HttpExchange exchange, int status, String body) throws IOException {
+		byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=utf-8");
+		exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+		if (bytes.length > 0) {
+			try (OutputStream output = exchange.getResponseBody()) {
+				output.write(bytes);
+			}
+		}
+	}
+
+	private String lines(SortedMap<Range, List<String>> labels) {
+		StringBuilder builder = new StringBuilder();
+		for (Map.Entry<Range, List<String>> label : labels.entrySet()) {
+			builder.append(label.getKey().start)
+					.append('\t')
+					.append(label.getKey().end)
+					.append('\t')
+					.append(String.join(",", label.getValue()))
+					.append('\n');
+		}
+		return builder.toString();
+	}
+
+	private interface Handler {
+
+		String handle(T12Classify task, byte[] body) throws Exception;
+
+	}
+
+}
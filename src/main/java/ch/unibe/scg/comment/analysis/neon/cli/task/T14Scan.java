@@ -0,0 +1,274 @@
+package ch.unibe.scg.comment.analysis.neon.cli.task;
+
+import ch.unibe.scg.comment.analysis.neon.cli.ClassifierRegistry;
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+import ch.unibe.scg.comment.analysis.neon.cli.ResultCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ResultSink;
+import ch.unibe.scg.comment.analysis.neon.cli.StemCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Labels the comments of all source files in a directory tree, skipping hidden directories. The language of a file is
+ * picked by its extension, ".java" for java, ".st" for pharo and ".py" for python, if it is scanned at all. Files are
+ * labelled in batches by a fixed pool of workers, at most {@code 2 * threads} batches wait for a worker, the walk
+ * blocks until one is available. A file that fails to be read or labelled is logged and counted as failed, the other
+ * files of its batch are labelled one by one if the batch fails. A failure to write the output aborts the scan, as
+ * the output would be truncated.
+ * <p>
+ * The labels of a batch are written to the output in the {@link ResultSink} format as soon as the batch is labelled,
+ * batches in order of completion. Files per second and sentences per second are logged every 10000 files and once
+ * done.
+ */
+public class T14Scan {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(T14Scan.class);
+	private static final Map<String, String> EXTENSIONS = Map.of(".java", "java", ".st", "pharo", ".py", "python");
+	private static final int BATCH_SIZE = 32;
+	private static final long PROGRESS = 10000;
+	private final List<String> data;
+	private final Path root;
+	private final int threads;
+	private final Path output;
+	private final String format;
+	private final Map<String, T12Classify> tasks;
+	private final AtomicLong files;
+	private final AtomicLong failed;
+	private final AtomicLong sentences;
+	// first failure to write the output, null while writing succeeds
+	private final AtomicReference<Exception> failure;
+	private long start;
+
+	/**
+	 * @param output file to write the labels to, null for standard output
+	 * @param format of the output, see {@link ResultSink#of(String, OutputStream, Map)}
+	 */
+	public T14Scan(List<String> data, Path root, int threads, Path output, String format) {
+		super();
+		this.data = data;
+		this.root = root;
+		this.threads = threads;
+		this.output = output;
+		this.format = format;
+		this.tasks = new HashMap<>();
+		this.files = new AtomicLong();
+		this.failed = new AtomicLong();
+		this.sentences = new AtomicLong();
+		this.failure = new AtomicReference<>();
+	}
+
+	public void run() throws Exception {
+		ClassifierRegistry classifiers = ClassifierRegistry.getInstance();
+		Map<String, List<String>> categories = new HashMap<>();
+		for (String data : this.data) {
+			this.tasks.put(data, new T12Classify(data, classifiers, ForkJoinPool.commonPool()));
+			categories.put(data, this.tasks.get(data).getCategories());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
+		Semaphore permits = new Semaphore(2 * this.threads);
+		ResultSink output = ResultSink.of(this.format,
+				this.output == null ? System.out : Files.newOutputStream(this.output),
+				categories
+		);
+		Map<String, List<Path>> batches = new HashMap<>();
+		this.start = System.nanoTime();
+		try {
+			Files.walkFileTree(this.root, new SimpleFileVisitor<>() {
+
+				@Override
+				public FileVisitResult preVisitDirectory(Path directory, BasicFileAttributes attributes) {
+					boolean hidden = !directory.equals(T14Scan.this.root) && directory.getFileName()
+							.toString()
+							.startsWith(".");
+					return hidden ? FileVisitResult.SKIP_SUBTREE : FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFile(Path file, BasicFileAttributes attributes) {
+					if (T14Scan.this.failure.get() != null) {
+						return FileVisitResult.TERMINATE;
+					}
+					String data = T14Scan.this.data(file);
+					if (data == null || !attributes.isRegularFile()) {
+						return FileVisitResult.CONTINUE;
+					}
+					List<Path> batch = batches.computeIfAbsent(data, k -> new ArrayList<>());
+					batch.add(file);
+					if (batch.size() == BATCH_SIZE) {
+						T14Scan.this.submit(executor, permits, output, data, batches.remove(data));
+					}
+					return FileVisitResult.CONTINUE;
+				}
+
+				@Override
+				public FileVisitResult visitFileFailed(Path file, IOException e) {
+					LOGGER.warn("{} failed to visit", file, e);
+					return FileVisitResult.CONTINUE;
+				}
+
+			});
+			for (Map.Entry<String, List<Path>> batch : batches.entrySet()) {
+				if (this.failure.get() == null) {
+					this.submit(executor, permits, output, batch.getKey(), batch.getValue());
+				}
+			}
+		} finally {
+			executor.shutdown();
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.DAYS);
+			try {
+				if (this.output == null) {
+					output.flush();
+				} else {
+					output.close();
+				}
+			} catch (IOException e) {
+				if (this.failure.get() == null) {
+					throw e;
+				}
+				this.failure.get().addSuppressed(e);
+			}
+		}
+		if (this.failure.get() != null) {
+			throw new IOException(String.format("%s aborted, output is truncated, %s", this.root, this.progress()),
+					this.failure.get()
+			);
+		}
+		LOGGER.info("{} done, {}", this.root, this.progress());
+		for (Map.Entry<String, T12Classify> task : this.tasks.entrySet()) {
+			if (task.getValue().getDeduplicator() != null) {
+				LOGGER.info("{} {}", task.getKey(), task.getValue().getDeduplicator());
+			}
+		}
+		if (ResultCache.getInstance() != null) {
+			LOGGER.info("{}", ResultCache.getInstance());
+		}
+		LOGGER.info("{}", StemCache.getInstance());
+	}
+
+	private void submit(
+			ExecutorService executor, Semaphore permits, ResultSink output, String data, List<Path> batch
+	) {
+		permits.acquireUninterruptibly();
+		try {
+			executor.execute(() -> {
+				try {
+					if (this.failure.get() == null) {
+						this.label(output, data, batch);
+					}
+				} catch (Exception e) {
+					// only writing throws, reading and labelling fail per file
+					if (this.failure.compareAndSet(null, e)) {
+						LOGGER.error("{} failed to write, aborting", batch, e);
+					}
+				} finally {
+					permits.release();
+				}
+			});
+		} catch (RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	private void label(ResultSink output, String data, List<Path> batch) throws IOException {
+		T12Classify task = this.tasks.get(data);
+		List<Path> paths = new ArrayList<>();
+		List<CharSequence> sources = new ArrayList<>();
+		long failed = 0;
+		for (Path path : batch) {
+			try {
+				sources.add(Utility.read(path));
+				paths.add(path);
+			} catch (IOException | RuntimeException e) {
+				LOGGER.warn("{} failed to read", path, e);
+				failed = failed + 1;
+			}
+		}
+		List<SortedMap<Range, List<String>>> labels;
+		try {
+			labels = task.labelAll(sources);
+		} catch (Exception e) {
+			// a single file should not drop the labels of the other files of its batch
+			LOGGER.debug("{} failed to label, labelling its files one by one", paths, e);
+			labels = new ArrayList<>();
+			for (int i = 0; i < paths.size(); i = i + 1) {
+				try {
+					labels.add(task.labelAll(List.of(sources.get(i))).get(0));
+				} catch (Exception f) {
+					LOGGER.warn("{} failed to label", paths.get(i), f);
+					labels.add(null);
+					failed = failed + 1;
+				}
+			}
+		}
+		long sentences = 0;
+		synchronized (output) {
+			if (this.failure.get() != null) {
+				return;
+			}
+			for (int i = 0; i < paths.size(); i = i + 1) {
+				if (labels.get(i) == null) {
+					continue;
+				}
+				for (Map.Entry<Range, List<String>> label : labels.get(i).entrySet()) {
+					output.write(paths.get(i),
+							data,
+							label.getKey(),
+							ResultSink.mask(task.getCategories(), label.getValue())
+					);
+				}
+				sentences = sentences + labels.get(i).size();
+			}
+			output.flush();
+		}
+		this.sentences.addAndGet(sentences);
+		this.failed.addAndGet(failed);
+		long files = this.files.addAndGet(batch.size());
+		if (files / PROGRESS != (files - batch.size()) / PROGRESS) {
+			LOGGER.info("{} scanning, {}", this.root, this.progress());
+		}
+	}
+
+	/**
+	 * @return the language of the file, null if the file is not scanned
+	 */
+	private String data(Path file) {
+		String name = file.getFileName().toString();
+		int dot = name.lastIndexOf('.');
+		String data = dot < 0 ? null : EXTENSIONS.get(name.substring(dot));
+		return data != null && this.data.contains(data) ? data : null;
+	}
+
+	private String progress() {
+		double seconds = Math.max((System.nanoTime() - this.start) / 1e9, 1e-3);
+		return String.format("%d files, %d failed, %d sentences in %.0f s, %.1f files/s, %.1f sentences/s",
+				this.files.get(),
+				this.failed.get(),
+				this.sentences.get(),
+				seconds,
+				this.files.get() / seconds,
+				this.sentences.get() / seconds
+		);
+	}
+
+}
@@ -0,0 +1,106 @@
+package ch.unibe.scg.comment.analysis.neon.cli.task;
+
+import ch.unibe.scg.comment.analysis.neon.cli.CompiledForest;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+import weka.core.converters.ArffLoader;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Compiles the classifiers in "classifier/[data]/[category].classifier" to {@link CompiledForest}s in
+ * "[output]/[category].forest". If the held-out dataset "[experiments]/1-0-[category]-tfidf-heuristic.arff" exists,
+ * the compiled forest must predict the same classes as the classifier on all of its instances, else it is not written.
+ */
+public class T15CompileClassifiers {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(T15CompileClassifiers.class);
+	private final String data;
+	private final Path output;
+	private final Path experiments;
+
+	public T15CompileClassifiers(String data, Path output, Path experiments) {
+		super();
+		this.data = data;
+		this.output = output;
+		this.experiments = experiments;
+	}
+
+	public void run() throws Exception {
+		Files.createDirectories(this.output);
+		List<String> categories = Utility.resource(String.format("classifier/%s/categories.csv", this.data))
+				.lines()
+				.collect(Collectors.toList());
+		for (String category : categories) {
+			String path = String.format("classifier/%s/%s.classifier", this.data, category);
+			byte[] bytes;
+			try (InputStream input = T15CompileClassifiers.class.getClassLoader().getResourceAsStream(path)) {
+				if (input == null) {
+					continue;
+				}
+				bytes = input.readAllBytes();
+			}
+			long start = System.nanoTime();
+			Classifier classifier = (Classifier) SerializationHelper.read(new ByteArrayInputStream(bytes));
+			long deserialized = System.nanoTime();
+			CompiledForest compiled = CompiledForest.compile(classifier,
+					MessageDigest.getInstance("SHA-256").digest(bytes)
+			);
+			byte[] compiledBytes = compiled.write();
+			long written = System.nanoTime();
+			compiled = CompiledForest.read(compiledBytes);
+			long read = System.nanoTime();
+			this.verify(category, classifier, compiled);
+			Files.write(this.output.resolve(String.format("%s.forest", category)), compiledBytes);
+			LOGGER.info("{} {} compiled, {} nodes, {} bytes loaded in {} ms, {} bytes compiled loaded in {} ms",
+					this.data,
+					category,
+					compiled.numNodes(),
+					bytes.length,
+					(deserialized - start) / 1_000_000,
+					compiledBytes.length,
+					(read - written) / 1_000_000
+			);
+		}
+	}
+
+	private void verify(String category, Classifier classifier, CompiledForest compiled) throws Exception {
+		Path path = this.experiments.resolve(String.format("1-0-%s-tfidf-heuristic.arff", category));
+		if (!Files.exists(path)) {
+			LOGGER.warn("{} {} not verified, {} is missing", this.data, category, path);
+			return;
+		}
+		ArffLoader loader = new ArffLoader();
+		loader.setFile(path.toFile());
+		Instances instances = loader.getDataSet();
+		instances.setClassIndex(instances.numAttributes() - 1);
+		double[] distribution = new double[compiled.numClasses()];
+		int mismatches = 0;
+		for (int i = 0; i < instances.numInstances(); i = i + 1) {
+			double expected = classifier.classifyInstance(instances.instance(i));
+			int actual = compiled.classify(instances.instance(i), distribution);
+			if (Double.isNaN(expected) ? actual >= 0 : expected != actual) {
+				mismatches = mismatches + 1;
+			}
+		}
+		if (mismatches > 0) {
+			throw new IllegalStateException(String.format("%s %s compiled mispredicts %d of %d held-out instances",
+					this.data,
+					category,
+					mismatches,
+					instances.numInstances()
+			));
+		}
+		LOGGER.info("{} {} verified on {} held-out instances", this.data, category, instances.numInstances());
+	}
+
+}
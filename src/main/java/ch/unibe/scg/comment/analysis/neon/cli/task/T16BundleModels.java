@@ -0,0 +1,75 @@
+package ch.unibe.scg.comment.analysis.neon.cli.task;
+
+import ch.unibe.scg.comment.analysis.neon.cli.CompiledForest;
+import ch.unibe.scg.comment.analysis.neon.cli.ModelBundle;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import weka.classifiers.Classifier;
+import weka.core.SerializationHelper;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Bundles the categories, heuristics, dictionary and classifiers in "classifier/[data]" into the {@link ModelBundle}
+ * "[directory]/[data].bundle", along with a {@link CompiledForest} of each classifier that can be compiled.
+ */
+public class T16BundleModels {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(T16BundleModels.class);
+	private final String data;
+	private final Path directory;
+
+	public T16BundleModels(String data, Path directory) {
+		super();
+		this.data = data;
+		this.directory = directory;
+	}
+
+	public void run() throws Exception {
+		Files.createDirectories(this.directory);
+		Map<String, byte[]> sections = new LinkedHashMap<>();
+		for (String name : List.of("categories.csv", "heuristics.xml", "dictionary.csv")) {
+			sections.put(name, this.resource(name));
+		}
+		List<String> categories = new String(sections.get("categories.csv"), StandardCharsets.UTF_8).lines()
+				.collect(Collectors.toList());
+		for (String category : categories) {
+			byte[] bytes = this.resource(String.format("%s.classifier", category));
+			if (bytes == null) {
+				continue;
+			}
+			sections.put(String.format("%s.classifier", category), bytes);
+			Classifier classifier = (Classifier) SerializationHelper.read(new ByteArrayInputStream(bytes));
+			try {
+				sections.put(String.format("%s.forest", category),
+						CompiledForest.compile(classifier, MessageDigest.getInstance("SHA-256").digest(bytes)).write()
+				);
+			} catch (IllegalArgumentException e) {
+				LOGGER.warn("{} {} not compiled", this.data, category, e);
+			}
+		}
+		Path path = this.directory.resolve(String.format("%s.bundle", this.data));
+		ModelBundle.write(path, this.data, sections);
+		LOGGER.info("{} bundled, {}", this.data, ModelBundle.open(path));
+	}
+
+	/**
+	 * @return content of the resource, null if missing
+	 */
+	private byte[] resource(String name) throws Exception {
+		String path = String.format("classifier/%s/%s", this.data, name);
+		try (InputStream input = T16BundleModels.class.getClassLoader().getResourceAsStream(path)) {
+			return input == null ? null : input.readAllBytes();
+		}
+	}
+
+}
@@ -1,7 +1,10 @@
 package ch.unibe.scg.comment.analysis.neon.cli.task;
 
-import org.neon.pathsFinder.engine.Parser;
+import ch.unibe.scg.comment.analysis.neon.cli.ParseCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ParserPool;
 import org.neon.pathsFinder.model.Sentence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.sql.Connection;
@@ -16,6 +19,7 @@ import java.util.stream.Collectors;
 
 public class T2SplitSentences {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(T2SplitSentences.class);
 	private final String database;
 	private final String data;
 
@@ -24,7 +28,7 @@ public class T2SplitSentences {
 		this.data = data;
 	}
 
-	public void run() throws SQLException, IOException {
+	public void run() throws SQLException, IOException, InterruptedException {
 		try (
 				Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.database);
 				Statement statement = connection.createStatement()
@@ -32,6 +36,7 @@ public class T2SplitSentences {
 			statement.executeUpdate("PRAGMA foreign_keys = on");
 			statement.executeUpdate(Utility.resource("sql/2_sentence.sql").replaceAll("\\{\\{data}}", this.data));
 			List<String> categories = this.categories(statement);
+			ParserPool parsers = new ParserPool(1, new ParseCache(connection));
 			try (
 					PreparedStatement insert = connection.prepareStatement(
 							"INSERT INTO " + this.data + "_2_sentence (class, category, sentence) VALUES (?, ?, ?)");
@@ -39,20 +44,23 @@ public class T2SplitSentences {
 			) {
 				while (result.next()) {
 					String clazz = result.getString("class");
-					this.sentences(insert, clazz, "comment", result.getString("comment"));
+					this.sentences(parsers, insert, clazz, "comment", result.getString("comment"));
 					for (String category : categories) {
-						this.sentences(insert, clazz, category, result.getString(category));
+						this.sentences(parsers, insert, clazz, category, result.getString(category));
 					}
 				}
 			}
+			LOGGER.info("{} {}", this.data, parsers);
 		}
 	}
 
-	private void sentences(PreparedStatement insert, String clazz, String category, String text) throws SQLException {
+	private void sentences(
+			ParserPool parsers, PreparedStatement insert, String clazz, String category, String text
+	) throws SQLException, InterruptedException {
 		if (text == null) {
 			return;
 		}
-		for (String sentence : this.split(text)) {
+		for (String sentence : this.split(parsers, text)) {
 			insert.setString(1, clazz);
 			insert.setString(2, category);
 			insert.setString(3, sentence);
@@ -60,8 +68,8 @@ public class T2SplitSentences {
 		}
 	}
 
-	private List<String> split(String text) {
-		return Parser.getInstance().parse(text).stream().map(Sentence::getText).collect(Collectors.toList());
+	private List<String> split(ParserPool parsers, String text) throws InterruptedException {
+		return parsers.sentences(text).stream().map(Sentence::getText).collect(Collectors.toList());
 	}
 
 	private List<String> categories(Statement statement) throws SQLException {
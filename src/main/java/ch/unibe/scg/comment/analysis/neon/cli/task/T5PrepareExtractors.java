@@ -1,21 +1,26 @@
 package ch.unibe.scg.comment.analysis.neon.cli.task;
 
+import ch.unibe.scg.comment.analysis.neon.cli.HeuristicsXml;
+import ch.unibe.scg.comment.analysis.neon.cli.ParseCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ParserPool;
+import ch.unibe.scg.comment.analysis.neon.cli.StemCache;
 import org.neon.model.Condition;
 import org.neon.model.Heuristic;
-import org.neon.pathsFinder.engine.Parser;
 import org.neon.pathsFinder.engine.PathsFinder;
-import org.neon.pathsFinder.engine.XMLWriter;
 import org.neon.pathsFinder.model.GrammaticalPath;
 import org.neon.pathsFinder.model.Sentence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.core.Attribute;
 import weka.core.DenseInstance;
+import weka.core.DictionaryBuilder;
+import weka.core.Instance;
 import weka.core.Instances;
-import weka.core.stemmers.IteratedLovinsStemmer;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.StringToWordVector;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.ByteArrayOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -30,6 +35,7 @@ import java.util.stream.Collectors;
 
 public class T5PrepareExtractors {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(T5PrepareExtractors.class);
 	private final String database;
 	private final String data;
 	private final int wordsToKeep;
@@ -47,6 +53,7 @@ public class T5PrepareExtractors {
 		) {
 			statement.executeUpdate("PRAGMA foreign_keys = on");
 			statement.executeUpdate(Utility.resource("sql/5_extractors.sql").replaceAll("\\{\\{data}}", this.data));
+			ParserPool parsers = new ParserPool(1, new ParseCache(connection));
 			Map<Integer, Map<String, List<String>>> partitions = new HashMap<>();
 			for (String category : this.categories(statement)) {
 				try (
@@ -75,7 +82,7 @@ public class T5PrepareExtractors {
 				for (Map.Entry<Integer, Map<String, List<String>>> partition : partitions.entrySet()) {
 					ArrayList<Heuristic> heuristics = new ArrayList<>();
 					for (Map.Entry<String, List<String>> category : partition.getValue().entrySet()) {
-						heuristics.addAll(this.heuristics(category.getKey(), category.getValue()));
+						heuristics.addAll(this.heuristics(parsers, category.getKey(), category.getValue()));
 					}
 					List<String> sentences = partition.getValue()
 							.values()
@@ -90,21 +97,18 @@ public class T5PrepareExtractors {
 					insert.executeUpdate();
 				}
 			}
+			LOGGER.info("{} {}", this.data, parsers);
+			LOGGER.info("{} {}", this.data, StemCache.getInstance());
 		}
 	}
 
 	private byte[] heuristics(ArrayList<Heuristic> heuristics) throws Exception {
-		Path path = Files.createTempFile("heuristics", ".xml");
-		try {
-			XMLWriter.addXMLHeuristics(path.toFile(), heuristics);
-			return Files.readAllBytes(path);
-		} finally {
-			path.toFile().delete();
-		}
+		return HeuristicsXml.write(heuristics);
 	}
 
-	private ArrayList<Heuristic> heuristics(String category, List<String> entries) {
-		ArrayList<Sentence> sentences = Parser.getInstance().parse(String.join("\n\n", entries));
+	private ArrayList<Heuristic> heuristics(ParserPool parsers, String category, List<String> entries)
+			throws InterruptedException {
+		ArrayList<Sentence> sentences = parsers.sentences(String.join("\n\n", entries));
 		ArrayList<GrammaticalPath> paths = PathsFinder.getInstance().discoverCommonPaths(sentences);
 		return paths.stream().map(p -> {
 			Heuristic heuristic = new Heuristic();
@@ -130,22 +134,25 @@ public class T5PrepareExtractors {
 			instance.setValue(instances.attribute("text"), sentence);
 			instances.add(instance);
 		}
-		Path path = Files.createTempFile("dictionary", ".csv");
-		try {
-			StringToWordVector filter = new StringToWordVector();
-			filter.setOutputWordCounts(true);
-			filter.setLowerCaseTokens(true);
-			filter.setDoNotOperateOnPerClassBasis(true);
-			filter.setStemmer(new IteratedLovinsStemmer());
-			filter.setWordsToKeep(this.wordsToKeep);
-			filter.setAttributeIndicesArray(new int[]{0}); // first attribute is sentence
-			filter.setDictionaryFileToSaveTo(path.toFile());
-			filter.setInputFormat(instances);
-			Filter.useFilter(instances, filter);
-			return Files.readAllBytes(path);
-		} finally {
-			path.toFile().delete();
+		// builds the dictionary like StringToWordVector does, without vectorizing the sentences or a dictionary file
+		DictionaryBuilder dictionary = new DictionaryBuilder();
+		dictionary.setOutputWordCounts(true);
+		dictionary.setLowerCaseTokens(true);
+		dictionary.setDoNotOperateOnPerClassBasis(true);
+		dictionary.setStemmer(StemCache.getInstance());
+		dictionary.setWordsToKeep(this.wordsToKeep);
+		dictionary.setAttributeIndicesArray(new int[]{0}); // first attribute is sentence
+		dictionary.setSortDictionary(true);
+		dictionary.setup(instances);
+		for (Instance instance : instances) {
+			dictionary.processInstance(instance);
+		}
+		dictionary.finalizeDictionary();
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		try (Writer writer = new OutputStreamWriter(output, StandardCharsets.UTF_8)) {
+			dictionary.saveDictionary(writer);
 		}
+		return output.toByteArray();
 	}
 
 	private List<String> categories(Statement statement) throws SQLException {
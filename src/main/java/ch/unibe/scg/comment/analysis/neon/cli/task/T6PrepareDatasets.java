@@ -1,12 +1,16 @@
 package ch.unibe.scg.comment.analysis.neon.cli.task;
 
+import ch.unibe.scg.comment.analysis.neon.cli.FeaturePipeline;
+import ch.unibe.scg.comment.analysis.neon.cli.HeuristicsXml;
 import ch.unibe.scg.comment.analysis.neon.cli.InstancesBuilder;
-import weka.core.converters.ArffSaver;
+import ch.unibe.scg.comment.analysis.neon.cli.ParseCache;
+import ch.unibe.scg.comment.analysis.neon.cli.ParserPool;
+import ch.unibe.scg.comment.analysis.neon.cli.SparseDataset;
+import ch.unibe.scg.comment.analysis.neon.cli.StemCache;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
@@ -19,18 +23,23 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class T6PrepareDatasets {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(T6PrepareDatasets.class);
 	private final String database;
 	private final String data;
 	private final int extractorsPartition;
+	private final int threads;
 
-	public T6PrepareDatasets(String database, String data, int extractorsPartition) {
+	public T6PrepareDatasets(String database, String data, int extractorsPartition, int threads) {
 		super();
 		this.database = database;
 		this.data = data;
 		this.extractorsPartition = extractorsPartition;
+		this.threads = threads;
 	}
 
 	public void run() throws Exception {
@@ -40,6 +49,8 @@ public class T6PrepareDatasets {
 		) {
 			statement.executeUpdate("PRAGMA foreign_keys = on");
 			statement.executeUpdate(Utility.resource("sql/6_dataset.sql").replaceAll("\\{\\{data}}", this.data));
+			// a parser per thread, warming up while the sentences are read
+			ParserPool parsers = new ParserPool(this.threads, new ParseCache(connection));
 			List<String> categories = this.categories(statement);
 			Map<Integer, String> sentences = new HashMap<>();
 			Map<Integer, Map<Integer, Set<String>>> partitions = new HashMap<>();
@@ -64,48 +75,50 @@ public class T6PrepareDatasets {
 					partitions.get(partition).get(id).add(category);
 				}
 			}
+			ExecutorService executor = Executors.newFixedThreadPool(this.threads);
 			try (
 					PreparedStatement insert = connection.prepareStatement("INSERT INTO " + this.data
 							+ "_6_dataset (partition, extractors_partition, dataset) VALUES (?, ?, ?)")
 			) {
+				// all partitions use the same extractors
+				FeaturePipeline pipeline = this.featurePipeline(statement, categories, parsers);
 				for (Map.Entry<Integer, Map<Integer, Set<String>>> partition : partitions.entrySet()) {
-					InstancesBuilder builder = this.instancesBuilder(statement, categories, partition.getKey());
+					InstancesBuilder builder = new InstancesBuilder(String.format("%s-features-%d-%d",
+							this.data,
+							this.extractorsPartition,
+							partition.getKey()
+					), pipeline);
 					for (Map.Entry<Integer, Set<String>> sentence : partition.getValue().entrySet()) {
 						builder.add(sentences.get(sentence.getKey()), sentence.getValue());
 					}
-					try (ByteArrayOutputStream buffer = new ByteArrayOutputStream()) {
-						ArffSaver saver = new ArffSaver();
-						saver.setInstances(builder.build());
-						saver.setDestination(buffer);
-						saver.writeBatch();
-						insert.setInt(1, partition.getKey());
-						insert.setInt(2, this.extractorsPartition);
-						insert.setBytes(3, buffer.toByteArray());
-						insert.executeUpdate();
-					}
+					insert.setInt(1, partition.getKey());
+					insert.setInt(2, this.extractorsPartition);
+					insert.setBytes(3, SparseDataset.of(builder.build(executor)).write());
+					insert.executeUpdate();
 				}
+				LOGGER.info("{} {}", this.data, parsers);
+				LOGGER.info("{} {}", this.data, StemCache.getInstance());
+			} finally {
+				executor.shutdown();
 			}
 		}
 	}
 
-	private InstancesBuilder instancesBuilder(
-			Statement statement, List<String> categories, int partition
-	) throws SQLException, IOException {
+	private FeaturePipeline featurePipeline(
+			Statement statement, List<String> categories, ParserPool parsers
+	) throws Exception {
 		try (
 				ResultSet result = statement.executeQuery(
 						"SELECT heuristics, dictionary FROM " + this.data + "_5_extractors WHERE partition = "
 								+ this.extractorsPartition + "")
 		) {
 			result.next();
-			Path heuristics = Files.createTempFile("heuristics", ".xml");
-			Files.write(heuristics, result.getBytes("heuristics"));
-			Path dictionary = Files.createTempFile("dictionary", ".csv");
-			Files.write(dictionary, result.getBytes("dictionary"));
-			return new InstancesBuilder(
-					String.format("%s-features-%d-%d", this.data, this.extractorsPartition, partition),
-					categories,
-					heuristics.toFile(),
-					dictionary.toFile()
+			// numeric heuristics only for new classifiers, the shipped ones were trained on nominal heuristics
+			return new FeaturePipeline(categories,
+					HeuristicsXml.read(result.getBytes("heuristics")),
+					new String(result.getBytes("dictionary"), StandardCharsets.UTF_8),
+					parsers,
+					Boolean.getBoolean("heuristics.numeric")
 			);
 		}
 	}
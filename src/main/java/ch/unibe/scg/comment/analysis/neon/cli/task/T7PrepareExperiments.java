@@ -1,12 +1,13 @@
 package ch.unibe.scg.comment.analysis.neon.cli.task;
 
 import ch.unibe.scg.comment.analysis.neon.cli.InstancesBuilder;
+import ch.unibe.scg.comment.analysis.neon.cli.SparseDataset;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import weka.core.Instances;
-import weka.core.converters.ArffSaver;
-import weka.filters.Filter;
-import weka.filters.unsupervised.attribute.RemoveByName;
-import weka.filters.unsupervised.attribute.Reorder;
 
+import java.io.IOException;
+import java.io.PrintWriter;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.sql.Connection;
@@ -15,22 +16,40 @@ import java.sql.ResultSet;
 import java.sql.Statement;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
+/**
+ * Writes a dataset per partition, category and feature family from the shared matrix of each partition, see
+ * {@link SparseDataset.Projection}. The datasets are written in parallel, instance by instance, so that time and
+ * memory do not grow with copies of the matrix per category.
+ */
 public class T7PrepareExperiments {
 
+	private static final Logger LOGGER = LoggerFactory.getLogger(T7PrepareExperiments.class);
+	/**
+	 * Decimal places of values, as written by {@link weka.core.converters.ArffSaver}.
+	 */
+	private static final int DECIMALS = 6;
 	private final String database;
 	private final String data;
 	private final Path directory;
+	private final int threads;
 
-	public T7PrepareExperiments(String database, String data, Path directory) {
+	public T7PrepareExperiments(String database, String data, Path directory, int threads) {
 		super();
 		this.database = database;
 		this.data = data;
 		this.directory = directory;
+		this.threads = threads;
 	}
 
 	public void run() throws Exception {
 		this.directory.toFile().mkdirs();
+		ExecutorService executor = Executors.newFixedThreadPool(this.threads);
 		try (
 				Connection connection = DriverManager.getConnection("jdbc:sqlite:" + this.database);
 				Statement statement = connection.createStatement()
@@ -43,45 +62,47 @@ public class T7PrepareExperiments {
 				while (result.next()) {
 					int partition = result.getInt("partition");
 					int extractorsPartition = result.getInt("extractors_partition");
-					byte[] dataset = result.getBytes("dataset");
-					Instances instances = InstancesBuilder.load(dataset);
-					List<String> categoryAttributeNames = new ArrayList<>();
-					for (int i = 0; i < instances.numAttributes(); i++) {
-						String name = instances.attribute(i).name();
-						if (name.startsWith("category-")) {
-							categoryAttributeNames.add(name);
+					byte[] bytes = result.getBytes("dataset");
+					// datasets of earlier versions are ARFF
+					SparseDataset dataset = SparseDataset.isSparseDataset(bytes)
+							? SparseDataset.read(bytes)
+							: SparseDataset.of(InstancesBuilder.load(bytes));
+					List<Callable<Void>> tasks = new ArrayList<>();
+					for (int label = 0; label < dataset.getLabels().size(); label = label + 1) {
+						int category = label;
+						// tfidf and heuristic, tfidf, heuristic
+						for (boolean[] features : new boolean[][]{{true, true}, {true, false}, {false, true}}) {
+							tasks.add(() -> this.storeDataset(dataset,
+									partition,
+									extractorsPartition,
+									category,
+									features[0],
+									features[1]
+							));
 						}
 					}
-					for (String categoryAttributeName : categoryAttributeNames) {
-						this.storeDataset(instances, partition, extractorsPartition, categoryAttributeName, true, true);
-						this.storeDataset(instances,
-								partition,
-								extractorsPartition,
-								categoryAttributeName,
-								true,
-								false
-						);
-						this.storeDataset(instances,
-								partition,
-								extractorsPartition,
-								categoryAttributeName,
-								false,
-								true
-						);
+					for (Future<Void> task : executor.invokeAll(tasks)) {
+						try {
+							task.get();
+						} catch (ExecutionException e) {
+							throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+						}
 					}
+					LOGGER.info("{} partition {} {}", this.data, partition, dataset);
 				}
 			}
+		} finally {
+			executor.shutdown();
 		}
 	}
 
-	private void storeDataset(
-			Instances instances,
-			int partition,
-			int extractorsPartition,
-			String categoryAttributeName,
-			boolean tfidf,
-			boolean heuristic
+	private Void storeDataset(
+			SparseDataset dataset, int partition, int extractorsPartition, int label, boolean tfidf, boolean heuristic
 	) throws Exception {
+		if (!tfidf && !heuristic) {
+			throw new IllegalArgumentException(
+					"tfidf and heuristic cannot be both false, there would be no features left otherwise");
+		}
 		// prepare dataset
 		String postfix = "";
 		if (tfidf) {
@@ -94,54 +115,31 @@ public class T7PrepareExperiments {
 				"%d-%d-%s%s",
 				partition,
 				extractorsPartition,
-				categoryAttributeName.substring("category-".length()).toLowerCase().replaceAll("[^a-z0-9]", ""),
+				dataset.getLabels()
+						.get(label)
+						.substring("category-".length())
+						.toLowerCase()
+						.replaceAll("[^a-z0-9]", ""),
 				postfix
 		);
-		Instances copy = this.prepareDataset(instances, categoryAttributeName, tfidf, heuristic);
-		copy.setRelationName(prefix);
-		// save dataset
-		ArffSaver saver = new ArffSaver();
+		// the features in order, the label last as it is default in weka
+		SparseDataset.Projection projection = dataset.project(label,
+				dataset.columns(n -> (tfidf || !n.startsWith("tfidf-")) && (heuristic || !n.startsWith("heuristic-")))
+		);
+		Instances header = projection.getHeader();
+		header.setRelationName(prefix);
+		// save dataset, instance by instance as the ArffSaver does in batch mode
 		Path path = Files.createFile(this.directory.resolve(String.format("%s.arff", prefix)));
-		saver.setFile(path.toFile());
-		saver.setInstances(copy);
-		saver.writeBatch();
-	}
-
-	private Instances prepareDataset(
-			Instances instances, String categoryAttributeName, boolean tfidf, boolean heuristic
-	) throws Exception {
-		if (!tfidf && !heuristic) {
-			throw new IllegalArgumentException(
-					"tfidf and heuristic cannot be both false, there would be no features left otherwise");
-		}
-		// copy it, as we are going to mess with that one for sure
-		instances = new Instances(instances);
-		// remove other categories
-		for (int i = instances.numAttributes() - 1; i >= 0; i = i - 1) {
-			String name = instances.attribute(i).name();
-			if (name.startsWith("category-") && !name.equals(categoryAttributeName)) {
-				instances.deleteAttributeAt(i);
+		try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(path))) {
+			writer.print(header);
+			for (int row = 0; row < projection.numRows(); row = row + 1) {
+				writer.println(projection.instance(row).toStringMaxDecimalDigits(DECIMALS));
+			}
+			if (writer.checkError()) {
+				throw new IOException(String.format("Failed to write %s", path));
 			}
 		}
-		// reorder to have label last, as it is default in weka
-		Reorder reorder = new Reorder();
-		reorder.setAttributeIndices("2-last,first");
-		reorder.setInputFormat(instances);
-		instances = Filter.useFilter(instances, reorder);
-		// remove attributes as desired
-		if (!tfidf) {
-			RemoveByName remove = new RemoveByName();
-			remove.setExpression("^tfidf-.*$");
-			remove.setInputFormat(instances);
-			instances = Filter.useFilter(instances, remove);
-		}
-		if (!heuristic) {
-			RemoveByName remove = new RemoveByName();
-			remove.setExpression("^heuristic-.*$");
-			remove.setInputFormat(instances);
-			instances = Filter.useFilter(instances, remove);
-		}
-		return instances;
+		return null;
 	}
 
 }
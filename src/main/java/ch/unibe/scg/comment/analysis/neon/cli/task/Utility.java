@@ -3,6 +3,12 @@ package ch.unibe.scg.comment.analysis.neon.cli.task;
 import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringWriter;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 
 public class Utility {
 
@@ -17,4 +23,17 @@ public class Utility {
 		}
 	}
 
+	/**
+	 * Decodes the memory-mapped file as UTF-8, replacing malformed input instead of failing on it. The file is decoded
+	 * into a heap buffer at once, mapping only saves copying its bytes, the buffer takes two bytes per character.
+	 */
+	public static CharBuffer read(Path path) throws IOException {
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			return StandardCharsets.UTF_8.newDecoder()
+					.onMalformedInput(CodingErrorAction.REPLACE)
+					.onUnmappableCharacter(CodingErrorAction.REPLACE)
+					.decode(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+		}
+	}
+
 }
@@ -0,0 +1,6 @@
+CREATE TABLE IF NOT EXISTS "parse_cache"
+(
+    "key"  TEXT NOT NULL,
+    "tree" BLOB NOT NULL,
+    PRIMARY KEY ("key")
+)
@@ -0,0 +1,7 @@
+CREATE TABLE IF NOT EXISTS "result_cache"
+(
+    "key"        TEXT    NOT NULL,
+    "categories" INTEGER NOT NULL,
+    "used"       INTEGER NOT NULL,
+    PRIMARY KEY ("key")
+)
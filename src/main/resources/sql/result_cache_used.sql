@@ -0,0 +1 @@
+CREATE INDEX IF NOT EXISTS "result_cache_used" ON "result_cache" ("used")
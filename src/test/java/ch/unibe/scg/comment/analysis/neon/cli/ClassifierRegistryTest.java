@@ -0,0 +1,41 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.Classifier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ClassifierRegistryTest {
+
+	@Test
+	public void lru() throws Exception {
+		// license and extension are below 200 kB each, formatter above 500 kB
+		ClassifierRegistry registry = new ClassifierRegistry(400_000);
+		Classifier license = registry.get("java", "license");
+		assertSame(license, registry.get("java", "license"));
+		registry.get("java", "extension");
+		assertEquals(0, registry.getEvictions());
+		registry.get("java", "license");
+		registry.get("java", "formatter");
+		// all others are evicted to keep the most recent one
+		assertEquals(2, registry.getEvictions());
+		assertNotSame(license, registry.get("java", "license"));
+		assertEquals(2, registry.getHits());
+		assertEquals(4, registry.getMisses());
+	}
+
+	@Test
+	public void missing() {
+		ClassifierRegistry registry = new ClassifierRegistry(Long.MAX_VALUE);
+		assertTrue(registry.contains("java", "license"));
+		assertFalse(registry.contains("java", "summary"));
+		assertThrows(Exception.class, () -> registry.get("java", "summary"));
+		assertEquals(0, registry.getSize());
+	}
+
+}
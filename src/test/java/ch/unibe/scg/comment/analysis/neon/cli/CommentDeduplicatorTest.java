@@ -0,0 +1,54 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.CommentDeduplicator.Representative;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class CommentDeduplicatorTest {
+
+	private static final List<String> LICENSE = List.of(
+			"Copyright (c) 2019 Jane Doe, University of Bern.",
+			"Licensed under the Apache License, Version 2.0 (the \"License\"); you may not use this file except in compliance with the License.",
+			"Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on an \"AS IS\" BASIS, without warranties or conditions of any kind, either express or implied."
+	);
+
+	@Test
+	public void deduplicate() {
+		CommentDeduplicator deduplicator = new CommentDeduplicator(0.8, 10);
+		Object owner = new Object();
+		Representative representative = deduplicator.add(deduplicator.signature(LICENSE), owner);
+		List<String> license = List.of("Copyright (c) 2020 John Doe, University of Bern.", LICENSE.get(1), LICENSE.get(2));
+		// pending representatives are only found by their owner
+		assertNull(deduplicator.find(deduplicator.signature(license), new Object()));
+		assertSame(representative, deduplicator.find(deduplicator.signature(license), owner));
+		deduplicator.complete(representative, new long[]{1, 2, 3});
+		assertSame(representative, deduplicator.find(deduplicator.signature(license), new Object()));
+		assertArrayEquals(new long[]{1, 2, 3}, representative.getMasks());
+		// structure differs
+		assertNull(deduplicator.find(deduplicator.signature(List.of(LICENSE.get(0) + " All rights reserved.",
+				LICENSE.get(1),
+				LICENSE.get(2)
+		)), owner));
+		// similarity differs
+		assertNull(deduplicator.find(deduplicator.signature(List.of("Returns the value of the field.")), owner));
+		assertEquals(5, deduplicator.getComments());
+		assertEquals(2, deduplicator.getDuplicates());
+		assertEquals(6, deduplicator.getSentences());
+	}
+
+	@Test
+	public void capacity() {
+		CommentDeduplicator deduplicator = new CommentDeduplicator(0.8, 1);
+		Object owner = new Object();
+		deduplicator.add(deduplicator.signature(LICENSE), owner);
+		deduplicator.add(deduplicator.signature(List.of("Returns the value of the field.")), owner);
+		assertNull(deduplicator.find(deduplicator.signature(LICENSE), owner));
+	}
+
+}
@@ -0,0 +1,79 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.CharBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class CommentLexerTest {
+
+	@Test
+	public void java() throws Exception {
+		assertEquals(List.of("// line", "/* block */", "/** doc */"), this.comments("java", """
+				int a = 1; // line
+				/* block */ String s = "// not a comment /* either */";
+				char c = '"'; /** doc */ char d = '\\'';
+				String t = \"""
+						/* not a comment */
+						\""";
+				"""));
+		// unterminated comments end the scan
+		assertEquals(List.of("// a"), this.comments("java", "// a\n/* b"));
+		// same as the regular expression on sources without comment delimiters in literals
+		String source = Files.readString(Paths.get(
+				"src/main/java/ch/unibe/scg/comment/analysis/neon/cli/StringToHeuristicVector.java"));
+		List<String> expected = new ArrayList<>();
+		Matcher matcher = Pattern.compile("//.*|(?s)/\\*.*?\\*/").matcher(source);
+		while (matcher.find()) {
+			expected.add(matcher.group());
+		}
+		assertEquals(expected, this.comments("java", source));
+	}
+
+	@Test
+	public void pharo() {
+		assertEquals(List.of("\"a \"\"quoted\"\" comment\"", "\"b\""), this.comments("pharo", """
+				foo
+					"a ""quoted"" comment"
+					| s |
+					s := 'it''s "not" a comment'.
+					^ $" = $' "b"
+				"""));
+	}
+
+	@Test
+	public void python() {
+		assertEquals(List.of("\"\"\"doc \"string\" here\"\"\"", "# line", "'''more'''"), this.comments("python", """
+				def foo():
+				    ""\"doc "string" here""\"
+				    s = "# not a comment" # line
+				    t = 'it\\'s'
+				    '''more'''
+				"""));
+	}
+
+	@Test
+	public void buffer() {
+		String source = "a /* b */ c";
+		assertEquals(this.comments("java", source),
+				CommentLexer.of("java")
+						.comments(CharBuffer.wrap(source))
+						.stream()
+						.map(r -> r.in(source))
+						.collect(Collectors.toList())
+		);
+	}
+
+	private List<String> comments(String data, String source) {
+		return CommentLexer.of(data).comments(source).stream().map(r -> r.in(source)).collect(Collectors.toList());
+	}
+
+}
@@ -0,0 +1,80 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.trees.RandomForest;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.Utils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class CompiledForestTest {
+
+	@Test
+	public void compile() throws Exception {
+		Random random = new Random(1);
+		Instances training = this.instances(random, 500);
+		RandomForest forest = new RandomForest();
+		forest.buildClassifier(training);
+		CompiledForest compiled = CompiledForest.read(CompiledForest.compile(forest, new byte[]{1, 2, 3}).write());
+		assertArrayEquals(new byte[]{1, 2, 3}, compiled.getSource());
+		assertEquals(2, compiled.numClasses());
+		assertTrue(compiled.getCapabilities().test(training));
+		double[] distribution = new double[compiled.numClasses()];
+		for (Instance instance : this.instances(random, 500)) {
+			Instance sparse = new SparseInstance(instance);
+			sparse.setDataset(instance.dataset());
+			for (Instance test : List.of(instance, sparse)) {
+				if (!test.hasMissingValue()) {
+					// bit for bit
+					assertArrayEquals(forest.distributionForInstance(test), compiled.distributionForInstance(test));
+				}
+				double expected = forest.classifyInstance(test);
+				assertEquals(Utils.isMissingValue(expected) ? -1 : (int) expected,
+						compiled.classify(test, distribution)
+				);
+			}
+		}
+	}
+
+	@Test
+	public void read() {
+		assertThrows(IllegalArgumentException.class, () -> CompiledForest.read(new byte[]{0, 0, 0, 0, 1}));
+	}
+
+	private Instances instances(Random random, int size) {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("count"));
+		attributes.add(new Attribute("score"));
+		attributes.add(new Attribute("kind", List.of("a", "b", "c")));
+		attributes.add(new Attribute("result", List.of("0", "1")));
+		Instances instances = new Instances("test", attributes, size);
+		instances.setClassIndex(instances.numAttributes() - 1);
+		for (int i = 0; i < size; i = i + 1) {
+			double count = random.nextInt(4);
+			double score = random.nextDouble();
+			double kind = random.nextInt(3);
+			double result = count > 1 && score > 0.3 || kind == 2 ? 1 : 0;
+			if (random.nextInt(10) == 0) {
+				result = 1 - result;
+			}
+			double[] values = new double[]{count, score, kind, result};
+			if (random.nextInt(10) == 0) {
+				values[random.nextInt(3)] = Utils.missingValue();
+			}
+			instances.add(new DenseInstance(1, values));
+		}
+		return instances;
+	}
+
+}
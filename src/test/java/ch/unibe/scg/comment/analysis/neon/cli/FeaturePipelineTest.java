@@ -0,0 +1,187 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.classifiers.Classifier;
+import weka.core.Attribute;
+import weka.core.DictionaryBuilder;
+import weka.core.Instances;
+import weka.core.stemmers.IteratedLovinsStemmer;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.FixedDictionaryStringToWordVector;
+
+import java.io.File;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class FeaturePipelineTest {
+
+	final File heuristics = new File("src/main/resources/classifier/java/heuristics.xml");
+	final File dictionary = new File("src/main/resources/classifier/java/dictionary.csv");
+
+	@Test
+	public void filters() throws Exception {
+		List<String> categories = Files.readAllLines(Paths.get("src/main/resources/classifier/java/categories.csv"));
+		InstancesBuilder builder = new InstancesBuilder("dataset", categories, this.heuristics, this.dictionary);
+		builder.add("This class provides the value.", Set.of("summary"));
+		builder.add("Do not call this method directly, use e.g. foo() instead.", Set.of("usage", "warning"));
+		builder.add("Is this thread safe?", Set.of());
+		builder.add("", Set.of());
+		Instances actual = builder.build();
+		Instances expected = this.filter(this.raw(builder), categories);
+		assertNull(expected.equalHeadersMsg(actual));
+		assertEquals(expected.relationName(), actual.relationName());
+		assertEquals(expected.numInstances(), actual.numInstances());
+		for (int i = 0; i < expected.numInstances(); i = i + 1) {
+			assertEquals(expected.instance(i).toString(), actual.instance(i).toString());
+		}
+		// heuristics are matched
+		assertTrue(actual.instance(0).value(actual.attribute("heuristic-summary-Provides [something].")) > 0);
+	}
+
+	@Test
+	public void parallel() throws Exception {
+		List<String> categories = Files.readAllLines(Paths.get("src/main/resources/classifier/java/categories.csv"));
+		InstancesBuilder builder = new InstancesBuilder("dataset", categories, this.heuristics, this.dictionary);
+		for (int i = 0; i < 40; i = i + 1) {
+			builder.add(String.format("This class provides the value %d.", i), Set.of("summary"));
+			builder.add("Do not call this method directly.", Set.of());
+		}
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			assertEquals(builder.build().toString(), builder.build(executor).toString());
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void numeric() throws Exception {
+		List<String> categories = Files.readAllLines(Paths.get("src/main/resources/classifier/java/categories.csv"));
+		List<String> sentences = List.of("This class provides the value.", "Is this thread safe?");
+		String dictionary = Files.readString(this.dictionary.toPath());
+		Instances nominal = new FeaturePipeline(categories,
+				HeuristicsXml.read(Files.readAllBytes(this.heuristics.toPath())),
+				dictionary,
+				ParserPool.getInstance()
+		).vectorize(sentences);
+		Instances numeric = new FeaturePipeline(categories,
+				HeuristicsXml.read(Files.readAllBytes(this.heuristics.toPath())),
+				dictionary,
+				ParserPool.getInstance(),
+				true
+		).vectorize(sentences);
+		assertEquals(nominal.numAttributes(), numeric.numAttributes());
+		for (int i = 0; i < nominal.numAttributes(); i = i + 1) {
+			boolean heuristic = nominal.attribute(i).name().startsWith("heuristic-");
+			assertEquals(heuristic, numeric.attribute(i).isNumeric() && nominal.attribute(i).isNominal());
+		}
+		for (int i = 0; i < sentences.size(); i = i + 1) {
+			assertArrayEquals(nominal.instance(i).toDoubleArray(), numeric.instance(i).toDoubleArray());
+		}
+		assertTrue(numeric.instance(0).value(numeric.attribute("heuristic-summary-Provides [something].")) > 0);
+	}
+
+	@Test
+	public void distributions() throws Exception {
+		List<String> categories = Files.readAllLines(Paths.get("src/main/resources/classifier/java/categories.csv"));
+		InstancesBuilder builder = new InstancesBuilder("dataset", categories, this.heuristics, this.dictionary);
+		List<String> sentences = List.of("the string class represents character strings.",
+				"all string literals in java programs, such as abc , are implemented as instances of this class.",
+				"strings are constant their values cannot be changed after they are created.",
+				"this class provides the value.",
+				"do not call this method directly, use foo instead.",
+				"returns the number of elements in this list.",
+				"throws illegalargumentexception if the index is negative.",
+				"todo remove once the parser handles generics.",
+				"deprecated use the builder instead.",
+				"copyright 2020 all rights reserved.",
+				"this implementation is not thread safe, synchronize externally.",
+				"see also the providing classes and their values."
+		);
+		for (String sentence : sentences) {
+			builder.add(sentence, Set.of());
+		}
+		// before the pipeline and its stem cache, with Weka's filters and a plain stemmer
+		Instances before = unlabelled(this.filter(this.raw(builder), categories));
+		Instances after = unlabelled(builder.build());
+		ClassifierRegistry registry = new ClassifierRegistry(Long.MAX_VALUE, false);
+		Set<String> distinct = new HashSet<>();
+		for (String category : categories) {
+			if (!registry.contains("java", category)) {
+				continue;
+			}
+			Classifier classifier = registry.get("java", category);
+			for (int i = 0; i < sentences.size(); i = i + 1) {
+				double[] expected = classifier.distributionForInstance(before.instance(i));
+				assertArrayEquals(expected, classifier.distributionForInstance(after.instance(i)), category);
+				distinct.add(category + Arrays.toString(expected));
+			}
+		}
+		// the distributions depend on the sentences, they are not compared vacuously
+		assertTrue(distinct.size() > categories.size());
+	}
+
+	/**
+	 * @return instances without categories and with the class attribute, as T12Classify classifies them
+	 */
+	static Instances unlabelled(Instances instances) {
+		for (int i = instances.numAttributes() - 1; i >= 0; i = i - 1) {
+			if (instances.attribute(i).name().startsWith("category-")) {
+				instances.deleteAttributeAt(i);
+			}
+		}
+		instances.insertAttributeAt(new Attribute("result", List.of("0", "1")), instances.numAttributes());
+		instances.setClassIndex(instances.numAttributes() - 1);
+		return instances;
+	}
+
+	private Instances raw(InstancesBuilder builder) throws Exception {
+		Field instances = InstancesBuilder.class.getDeclaredField("instances");
+		instances.setAccessible(true);
+		return (Instances) instances.get(builder);
+	}
+
+	/**
+	 * @return instances transformed by the filters the pipeline replaces
+	 */
+	private Instances filter(Instances raw, List<String> categories) throws Exception {
+		Instances instances = raw;
+		StringToHeuristicVector heuristic = new StringToHeuristicVector();
+		heuristic.setCategories(categories);
+		heuristic.setHeuristics(this.heuristics);
+		heuristic.setInputFormat(instances);
+		instances = Filter.useFilter(instances, heuristic);
+		int i = instances.attribute("text").index() + 1;
+		FixedDictionaryStringToWordVector tfidf = new FixedDictionaryStringToWordVector();
+		tfidf.setLowerCaseTokens(true);
+		tfidf.setStemmer(new IteratedLovinsStemmer());
+		tfidf.setOutputWordCounts(true);
+		tfidf.setTFTransform(true);
+		tfidf.setIDFTransform(true);
+		tfidf.setAttributeNamePrefix("tfidf-");
+		tfidf.setAttributeIndices(String.format("%d-%d", i, i));
+		tfidf.setDictionaryFile(this.dictionary);
+		tfidf.setInputFormat(instances);
+		Field mCount = DictionaryBuilder.class.getDeclaredField("m_count");
+		mCount.setAccessible(true);
+		Field mVectorizer = FixedDictionaryStringToWordVector.class.getDeclaredField("m_vectorizer");
+		mVectorizer.setAccessible(true);
+		mCount.set(mVectorizer.get(tfidf), 1000);
+		Instances result = Filter.useFilter(instances, tfidf);
+		result.setRelationName(raw.relationName());
+		return result;
+	}
+
+}
@@ -0,0 +1,68 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.neon.engine.XMLReader;
+import org.neon.model.Condition;
+import org.neon.model.Heuristic;
+import org.neon.model.Term;
+import org.neon.pathsFinder.engine.XMLWriter;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class HeuristicsXmlTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void read() throws Exception {
+		for (String data : List.of("java", "pharo", "python")) {
+			File file = new File(String.format("src/main/resources/classifier/%s/heuristics.xml", data));
+			ArrayList<Heuristic> expected = XMLReader.read(file);
+			ArrayList<Heuristic> actual = HeuristicsXml.read(Files.readAllBytes(file.toPath()));
+			assertEquals(expected.size(), actual.size());
+			for (int i = 0; i < expected.size(); i = i + 1) {
+				assertEquals(this.toString(expected.get(i)), this.toString(actual.get(i)));
+			}
+		}
+		assertThrows(IOException.class, () -> HeuristicsXml.read("<heuristics>".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	public void write() throws Exception {
+		File file = new File("src/main/resources/classifier/java/heuristics.xml");
+		ArrayList<Heuristic> heuristics = XMLReader.read(file);
+		heuristics.get(0).setSentence_type("");
+		Path path = Files.createFile(this.directory.resolve("heuristics.xml"));
+		XMLWriter.addXMLHeuristics(path.toFile(), heuristics);
+		byte[] actual = HeuristicsXml.write(heuristics);
+		assertArrayEquals(Files.readAllBytes(path), actual);
+		assertEquals(heuristics.size(), HeuristicsXml.read(actual).size());
+	}
+
+	private String toString(Heuristic heuristic) {
+		StringBuilder builder = new StringBuilder();
+		builder.append(heuristic.getType()).append('|').append(heuristic.getText()).append('|');
+		builder.append(heuristic.getSentence_type()).append('|').append(heuristic.getSentence_class());
+		for (Condition condition : heuristic.getConditions()) {
+			builder.append('|').append(condition.getConditionString()).append(',').append(condition.isNegative());
+			for (Term term : List.of(condition.getFirstTerm(), condition.getLastTerm())) {
+				builder.append(',').append(term.getTd_type()).append(',').append(term.getChild_type());
+				builder.append(',').append(term.getTokens()).append(',').append(term.isTokensType());
+			}
+		}
+		return builder.toString();
+	}
+
+}
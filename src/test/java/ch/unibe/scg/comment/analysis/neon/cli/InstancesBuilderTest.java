@@ -0,0 +1,63 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.core.Attribute;
+import weka.core.DenseInstance;
+import weka.core.Instance;
+import weka.core.Instances;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class InstancesBuilderTest {
+
+	@Test
+	public void save() throws Exception {
+		Instances instances = this.instances();
+		Instances loaded = InstancesBuilder.load(InstancesBuilder.save(instances));
+		assertNull(instances.equalHeadersMsg(loaded));
+		assertEquals(instances.toString(), loaded.toString());
+		// from the position of the buffer on
+		byte[] bytes = InstancesBuilder.save(instances);
+		ByteBuffer buffer = ByteBuffer.allocate(bytes.length + 3);
+		buffer.put(new byte[]{1, 2, 3}).put(bytes).flip().position(3);
+		assertEquals(instances.toString(), InstancesBuilder.load(buffer).toString());
+		assertEquals(3, buffer.position());
+	}
+
+	@Test
+	public void read() throws Exception {
+		Instances instances = this.instances();
+		Iterator<Instance> iterator = InstancesBuilder.read(ByteBuffer.wrap(InstancesBuilder.save(instances)));
+		for (Instance expected : instances) {
+			Instance actual = iterator.next();
+			assertEquals(expected.toString(), actual.toString());
+			assertEquals("test", actual.dataset().relationName());
+		}
+		assertFalse(iterator.hasNext());
+	}
+
+	private Instances instances() {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("category-summary", List.of("0", "1")));
+		attributes.add(new Attribute("tfidf-class"));
+		attributes.add(new Attribute("text", true, null));
+		Instances instances = new Instances("test", attributes, 0);
+		for (int i = 0; i < 5; i = i + 1) {
+			DenseInstance instance = new DenseInstance(3);
+			instance.setDataset(instances);
+			instance.setValue(0, i % 2);
+			instance.setValue(1, i * 0.25);
+			instance.setValue(2, String.format("sentence %d, 'quoted'", i));
+			instances.add(instance);
+		}
+		return instances;
+	}
+
+}
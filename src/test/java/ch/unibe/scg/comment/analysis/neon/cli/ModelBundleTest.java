@@ -0,0 +1,138 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.task.T16BundleModels;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import weka.classifiers.Classifier;
+import weka.core.Instances;
+import weka.core.SerializationHelper;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class ModelBundleTest {
+
+	@TempDir
+	Path directory;
+
+	@Test
+	public void write() throws Exception {
+		Path path = this.directory.resolve("java.bundle");
+		ModelBundle.write(path, "java", this.sections("summary"));
+		ModelBundle bundle = ModelBundle.open(path);
+		assertEquals("java", bundle.getData());
+		assertEquals(List.of("categories.csv", "empty", "summary.classifier"), bundle.getNames());
+		assertTrue(bundle.contains("summary.classifier"));
+		assertFalse(bundle.contains("usage.classifier"));
+		assertEquals(7, bundle.getLength("summary.classifier"));
+		ByteBuffer buffer = bundle.get("categories.csv");
+		byte[] bytes = new byte[buffer.remaining()];
+		buffer.get(bytes);
+		assertEquals("summary\nusage", new String(bytes, StandardCharsets.UTF_8));
+		assertEquals(0, bundle.get("empty").remaining());
+		try (InputStream input = bundle.stream("summary.classifier")) {
+			assertArrayEquals("summary".getBytes(StandardCharsets.UTF_8), input.readAllBytes());
+		}
+		assertThrows(IOException.class, () -> bundle.get("usage.classifier"));
+	}
+
+	@Test
+	public void version() throws Exception {
+		Path a = this.directory.resolve("a.bundle");
+		Path b = this.directory.resolve("b.bundle");
+		Path c = this.directory.resolve("c.bundle");
+		ModelBundle.write(a, "java", this.sections("summary"));
+		ModelBundle.write(b, "java", this.sections("summary"));
+		ModelBundle.write(c, "java", this.sections("summarz"));
+		assertEquals(ModelBundle.open(a).getVersion(), ModelBundle.open(b).getVersion());
+		assertNotEquals(ModelBundle.open(a).getVersion(), ModelBundle.open(c).getVersion());
+	}
+
+	@Test
+	public void corrupt() throws Exception {
+		Path path = this.directory.resolve("java.bundle");
+		ModelBundle.write(path, "java", this.sections("summary"));
+		byte[] bytes = Files.readAllBytes(path);
+		bytes[bytes.length - 1] = 'Z';
+		Files.write(path, bytes);
+		ModelBundle bundle = ModelBundle.open(path);
+		// other sections stay usable
+		assertEquals(0, bundle.get("empty").remaining());
+		assertThrows(IOException.class, () -> bundle.get("summary.classifier"));
+		Files.write(path, new byte[]{1, 2, 3, 4, 5});
+		assertThrows(IOException.class, () -> ModelBundle.open(path));
+	}
+
+	@Test
+	public void distributions() throws Exception {
+		new T16BundleModels("java", this.directory).run();
+		ModelBundle bundle = ModelBundle.open(this.directory.resolve("java.bundle"));
+		List<String> categories = Files.readAllLines(Paths.get("src/main/resources/classifier/java/categories.csv"));
+		FeaturePipeline pipeline = new FeaturePipeline(categories,
+				new File("src/main/resources/classifier/java/heuristics.xml"),
+				new File("src/main/resources/classifier/java/dictionary.csv")
+		);
+		Instances instances = FeaturePipelineTest.unlabelled(pipeline.vectorize(List.of(
+				"returns the index of the first occurrence of the element.",
+				"this method is not thread safe.",
+				"do not modify the returned list, use a copy instead.",
+				"author john doe",
+				"fixme handle the empty case.",
+				"the default implementation throws unsupportedoperationexception.",
+				"licensed under the apache license, version 2.0."
+		)));
+		int forests = 0;
+		for (String category : categories) {
+			String name = String.format("%s.classifier", category);
+			if (!bundle.contains(name)) {
+				continue;
+			}
+			Classifier expected;
+			try (InputStream input = ModelBundleTest.class.getClassLoader()
+					.getResourceAsStream(String.format("classifier/java/%s", name))) {
+				expected = (Classifier) SerializationHelper.read(input);
+			}
+			List<Classifier> actuals = new ArrayList<>();
+			actuals.add((Classifier) SerializationHelper.read(bundle.stream(name)));
+			if (bundle.contains(String.format("%s.forest", category))) {
+				actuals.add(CompiledForest.read(bundle.get(String.format("%s.forest", category))));
+				forests = forests + 1;
+			}
+			for (int i = 0; i < instances.numInstances(); i = i + 1) {
+				for (Classifier actual : actuals) {
+					assertArrayEquals(expected.distributionForInstance(instances.instance(i)),
+							actual.distributionForInstance(instances.instance(i)),
+							category
+					);
+				}
+			}
+		}
+		assertTrue(forests > 0);
+	}
+
+	private Map<String, byte[]> sections(String classifier) {
+		Map<String, byte[]> sections = new LinkedHashMap<>();
+		sections.put("categories.csv", "summary\nusage".getBytes(StandardCharsets.UTF_8));
+		sections.put("empty", new byte[0]);
+		sections.put("summary.classifier", classifier.getBytes(StandardCharsets.UTF_8));
+		return sections;
+	}
+
+}
@@ -2,6 +2,10 @@ package ch.unibe.scg.comment.analysis.neon.cli;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 
 public class NormalizedStringTest {
@@ -50,4 +54,64 @@ public class NormalizedStringTest {
 		assertEquals(normalizedRange.in(normalized.normalized), "jd. asdf16flk ajsl fj as");
 	}
 
+	@Test
+	public void abbreviations() {
+		// used to rewrite "eg" to itself forever
+		assertEquals(new NormalizedString("see e.g., i. e. this, etc.").normalized, "see eg, ie this, etc");
+		assertEquals(new NormalizedString("eg, ie etc").normalized, "eg, ie etc");
+	}
+
+	@Test
+	public void regex() {
+		List<String> tokens = List.of("a", "e", "g", "i", "t", "c", "etc", "1", "2", " ", "  ", "\n", "\r\n", "\r", ".",
+				",", "!", "?", "...", ",,", " ,", ";", "E", "#", "\u00e9", "\ud83d\ude00", "e.g.", "i. e. ", "etc."
+		);
+		Random random = new Random(42);
+		for (int i = 0; i < 20000; i = i + 1) {
+			StringBuilder builder = new StringBuilder();
+			int length = random.nextInt(16);
+			for (int j = 0; j < length; j = j + 1) {
+				builder.append(tokens.get(random.nextInt(tokens.size())));
+			}
+			String original = builder.toString();
+			NormalizedString expected = new RegexNormalizedString(original);
+			NormalizedString actual = new NormalizedString(original);
+			assertEquals(expected.normalized, actual.normalized, original);
+			assertEquals(expected.changes.toString(), actual.changes.toString(), original);
+		}
+	}
+
+	@Test
+	public void offsets() {
+		Random random = new Random(42);
+		for (int i = 0; i < 2000; i = i + 1) {
+			// arbitrary changes, also overlapping ones applied right to left
+			List<NormalizedString.Change> changes = new ArrayList<>();
+			int length = random.nextInt(20);
+			for (int j = random.nextInt(30); j > 0; j = j - 1) {
+				int start = random.nextInt(length + 1);
+				int end = start + random.nextInt(Math.min(3, length - start) + 1);
+				NormalizedString.Change change = new NormalizedString.Change(new NormalizedString.Range(start, end),
+						random.nextInt(4)
+				);
+				changes.add(change);
+				length = length + change.delta();
+			}
+			NormalizedString.OffsetMap offsets = new NormalizedString.OffsetMap(changes);
+			for (int start = 0; start <= length; start = start + 1) {
+				for (int end = start; end <= length; end = end + 1) {
+					NormalizedString.Range range = new NormalizedString.Range(start, end);
+					assertEquals(this.revert(changes, range), offsets.revert(range), changes + " " + range);
+				}
+			}
+		}
+	}
+
+	private NormalizedString.Range revert(List<NormalizedString.Change> changes, NormalizedString.Range range) {
+		for (int i = changes.size() - 1; i >= 0; i = i - 1) {
+			range = changes.get(i).revert(range);
+		}
+		return range;
+	}
+
 }
@@ -0,0 +1,31 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import edu.stanford.nlp.trees.Tree;
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ParseCacheTest {
+
+	@Test
+	public void cache() throws Exception {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+			ParseCache cache = new ParseCache(connection);
+			Tree tree = Tree.valueOf("(ROOT (S (NP (DT this) (NN class)) (VP (VBZ provides) (NP (DT the) (NN value)))))");
+			assertNull(cache.get("this class provides the value"));
+			cache.put("this class provides the value", tree);
+			cache.put("this class provides the value", tree);
+			assertEquals(tree, cache.get("this class provides the value"));
+			assertNull(cache.get("this class provides the value."));
+			assertEquals(1, cache.getHits());
+			assertEquals(2, cache.getMisses());
+			// a second cache on the same database shares the trees
+			assertEquals(tree, new ParseCache(connection).get("this class provides the value"));
+		}
+	}
+
+}
@@ -0,0 +1,43 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class ParserPoolTest {
+
+	@Test
+	public void parse() throws Exception {
+		ParserPool parsers = new ParserPool(2, null);
+		String text = "This class provides the value. Is this thread safe?";
+		List<DependencyParser.Parse> expected = (new DependencyParser()).parse(text);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<List<DependencyParser.Parse>>> futures = new ArrayList<>();
+			for (int i = 0; i < 8; i = i + 1) {
+				futures.add(executor.submit(() -> parsers.parse(text)));
+			}
+			for (Future<List<DependencyParser.Parse>> future : futures) {
+				List<DependencyParser.Parse> actual = future.get();
+				assertEquals(expected.size(), actual.size());
+				for (int i = 0; i < expected.size(); i = i + 1) {
+					assertEquals(expected.get(i).interrogative, actual.get(i).interrogative);
+					assertEquals(expected.get(i).dependencies.toString(), actual.get(i).dependencies.toString());
+				}
+			}
+		} finally {
+			executor.shutdown();
+		}
+		assertEquals(8, parsers.getBorrows());
+		// all parsers are returned
+		assertEquals(2, parsers.sentences(text).size());
+		assertEquals(9, parsers.getBorrows());
+	}
+
+}
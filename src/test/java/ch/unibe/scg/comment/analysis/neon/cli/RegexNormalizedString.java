@@ -0,0 +1,175 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Reference implementation rewriting with regular expressions until none matches anymore. Matches that would not
+ * change anything are skipped, as they would be matched forever.
+ */
+class RegexNormalizedString extends NormalizedString {
+
+	RegexNormalizedString(String original) {
+		super(original);
+	}
+
+	@Override
+	protected String normalizeLineEnds(String original) {
+		return this.change(original, "\r\n|\r", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
+			return "\n";
+		});
+	}
+
+	@Override
+	protected String reduceAlphabet(String original) {
+		return this.change(original, "[^a-z0-9,.!? \n]+", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
+			return " ";
+		});
+	}
+
+	@Override
+	protected String reduceFloats(String original) {
+		return this.change(original, "([0-9]+)\\.([0-9]+)", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 0));
+			return "$1$2";
+		});
+	}
+
+	@Override
+	protected String reduceSpaces(String original) {
+		return this.change(original, " ( +)", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
+			return " ";
+		});
+	}
+
+	@Override
+	protected String trimStart(String original) {
+		return this.change(original, "^[ \n]+", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 0));
+			return "";
+		});
+	}
+
+	@Override
+	protected String trimEnd(String original) {
+		return this.change(original, "[ \n]+$", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 0));
+			return "";
+		});
+	}
+
+	@Override
+	protected String reduceLineStarts(String original) {
+		return this.change(original, "\n ", result -> {
+			this.changes.add(new Change(new Range(result.start() + 1, result.end()), 0));
+			return "\n";
+		});
+	}
+
+	@Override
+	protected String reduceLineEnds(String original) {
+		return this.change(original, " \n", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end() - 1), 0));
+			return "\n";
+		});
+	}
+
+	@Override
+	protected String reduceNewLines(String original) {
+		return this.change(original, "\n\n(\n+)", result -> {
+			this.changes.add(new Change(new Range(result.start(1), result.end(1)), 0));
+			return "\n\n";
+		});
+	}
+
+	@Override
+	protected String joinLines(String original) {
+		return this.change(original, "([^.!?\n])\n([^\n])", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 1));
+			return "$1 $2";
+		});
+	}
+
+	@Override
+	protected String normalizeSentenceEnds(String original) {
+		return this.change(original, " ?([.!?])[ .!?]+", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 1));
+			return "$1";
+		});
+	}
+
+	@Override
+	protected String normalizeCommas(String original) {
+		return this.change(original, " ?,,+", result -> {
+			this.changes.add(new Change(new Range(result.start(), result.end()), 2));
+			return ", ";
+		});
+	}
+
+	@Override
+	protected String splitJoinedSentences(String original) {
+		return this.change(original, "([,.!?])([^ ])", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.end(1)), 1));
+			return "$1 $2";
+		});
+	}
+
+	@Override
+	protected String normalizeLineStarts(String original) {
+		return this.change(original, "(\n|^)([ .!?]+)", result -> {
+			this.changes.add(new Change(new Range(result.start(2), result.end(2)), 0));
+			return "$1";
+		});
+	}
+
+	@Override
+	protected String normalizeEg(String original) {
+		return this.change(original, "(^|[^a-z0-9])e\\.? ?g\\.? ?($|[^.a-z0-9])", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 2));
+			return "$1eg$2";
+		});
+	}
+
+	@Override
+	protected String normalizeIe(String original) {
+		return this.change(original, "(^|[^a-z0-9])i\\.? ?e\\.? ?($|[^.a-z0-9])", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 2));
+			return "$1ie$2";
+		});
+	}
+
+	@Override
+	protected String normalizeEtc(String original) {
+		return this.change(original, "(^|[^a-z0-9])etc\\.? ?($|[^.a-z0-9])", result -> {
+			this.changes.add(new Change(new Range(result.end(1), result.start(2)), 3));
+			return "$1etc$2";
+		});
+	}
+
+	private String change(String original, String regex, Function<MatchResult, String> replacer) {
+		Pattern pattern = Pattern.compile(regex);
+		Matcher matcher = pattern.matcher(original);
+		int from = 0;
+		while (matcher.find(from)) {
+			int changes = this.changes.size();
+			StringBuilder replaced = new StringBuilder();
+			matcher.appendReplacement(replaced, replacer.apply(matcher));
+			if (replaced.substring(matcher.start()).equals(matcher.group())) {
+				// the replacement would match again
+				this.changes.subList(changes, this.changes.size()).clear();
+				from = matcher.start() + 1;
+				continue;
+			}
+			original = replaced.append(original, matcher.end(), original.length()).toString();
+			matcher = pattern.matcher(original);
+			from = 0;
+		}
+		return original;
+	}
+
+}
@@ -0,0 +1,75 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+public class ResultCacheTest {
+
+	@Test
+	public void cache() throws Exception {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+			ResultCache cache = new ResultCache(connection, 10);
+			assertNull(cache.get("a", "this class provides the value"));
+			cache.put("a", Map.of("this class provides the value", 5L));
+			cache.put("a", Map.of("this class provides the value", 5L));
+			assertEquals(5L, cache.get("a", "this class provides the value"));
+			// other classifiers do not share the categories
+			assertNull(cache.get("b", "this class provides the value"));
+			assertEquals(1, cache.getHits());
+			assertEquals(2, cache.getMisses());
+			assertEquals(1, cache.getSize());
+			// a second cache on the same database shares the categories
+			assertEquals(5L, new ResultCache(connection, 10).get("a", "this class provides the value"));
+		}
+	}
+
+	@Test
+	public void evict() throws Exception {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+			ResultCache cache = new ResultCache(connection, 10);
+			for (int i = 0; i < 10; i = i + 1) {
+				cache.put("a", Map.of("sentence " + i, (long) i));
+			}
+			// used, so evicted last
+			assertEquals(0L, cache.get("a", "sentence 0"));
+			cache.put("a", Map.of("sentence 10", 10L));
+			assertEquals(9, cache.getSize());
+			assertEquals(2, cache.getEvictions());
+			assertEquals(0L, cache.get("a", "sentence 0"));
+			assertNull(cache.get("a", "sentence 1"));
+			assertNull(cache.get("a", "sentence 2"));
+			assertEquals(3L, cache.get("a", "sentence 3"));
+			assertEquals(10L, cache.get("a", "sentence 10"));
+		}
+	}
+
+	@Test
+	public void flush() throws Exception {
+		try (Connection connection = DriverManager.getConnection("jdbc:sqlite::memory:")) {
+			ResultCache cache = new ResultCache(connection, 10);
+			for (int i = 0; i < 10; i = i + 1) {
+				cache.put("a", Map.of("sentence " + i, (long) i));
+			}
+			// batches of hits only, recorded on flush or once enough are looked up
+			assertEquals(0L, cache.get("a", "sentence 0"));
+			cache.flush();
+			for (int i = 0; i < 1024; i = i + 1) {
+				assertEquals(1L, cache.get("a", "sentence 1"));
+			}
+			// another cache evicts the least recently used of all
+			new ResultCache(connection, 10).put("a", Map.of("sentence 10", 10L));
+			assertEquals(0L, cache.get("a", "sentence 0"));
+			assertEquals(1L, cache.get("a", "sentence 1"));
+			assertNull(cache.get("a", "sentence 2"));
+			assertNull(cache.get("a", "sentence 3"));
+			assertEquals(4L, cache.get("a", "sentence 4"));
+		}
+	}
+
+}
@@ -0,0 +1,91 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class ResultSinkTest {
+
+	final Map<String, List<String>> categories = Map.of("java", List.of("deprecation", "summary", "usage"));
+
+	@Test
+	public void mask() {
+		assertEquals(0b101, ResultSink.mask(this.categories.get("java"), List.of("usage", "deprecation")));
+		assertEquals(0, ResultSink.mask(this.categories.get("java"), List.of()));
+		assertThrows(IllegalArgumentException.class, () -> ResultSink.mask(this.categories.get("java"), List.of("x")));
+	}
+
+	@Test
+	public void tsv() throws Exception {
+		assertEquals("A.java\t3\t10\tdeprecation,usage\nA.java\t11\t300\t\n", this.write("tsv"));
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (ResultSink sink = ResultSink.of("tsv", buffer, this.categories)) {
+			sink.write(Paths.get("a\tb\nc\rd\\e.java"), "java", new Range(3, 10), 0b101);
+		}
+		assertEquals("a\\tb\\nc\\rd\\\\e.java\t3\t10\tdeprecation,usage\n", buffer.toString(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void ndjson() throws Exception {
+		assertEquals("""
+				{"file":"A.java","data":"java","start":3,"end":10,"categories":5}
+				{"file":"A.java","data":"java","start":11,"end":300,"categories":0}
+				""", this.write("ndjson"));
+	}
+
+	@Test
+	public void binary() throws Exception {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (ResultSink sink = ResultSink.of("binary", buffer, this.categories)) {
+			this.write(sink);
+		}
+		DataInputStream input = new DataInputStream(new ByteArrayInputStream(buffer.toByteArray()));
+		assertEquals(ResultSink.Binary.MAGIC, input.readInt());
+		assertEquals(ResultSink.Binary.VERSION, input.readByte());
+		assertEquals(1, input.readByte());
+		assertEquals("java", input.readUTF());
+		assertEquals(3, input.readByte());
+		assertEquals("deprecation", input.readUTF());
+		assertEquals("summary", input.readUTF());
+		assertEquals("usage", input.readUTF());
+		assertEquals(ResultSink.Binary.FILE, input.readByte());
+		assertEquals("A.java", input.readUTF());
+		assertEquals(0, input.readByte());
+		assertEquals(ResultSink.Binary.SENTENCE, input.readByte());
+		assertEquals(3, input.readByte());
+		assertEquals(7, input.readByte());
+		assertEquals(5, input.readByte());
+		// the file is not repeated, 289 is written as varint
+		assertEquals(ResultSink.Binary.SENTENCE, input.readByte());
+		assertEquals(11, input.readByte());
+		assertEquals(0xA1, input.readUnsignedByte());
+		assertEquals(0x02, input.readByte());
+		assertEquals(0, input.readByte());
+		assertEquals(-1, input.read());
+	}
+
+	private String write(String format) throws IOException {
+		ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+		try (ResultSink sink = ResultSink.of(format, buffer, this.categories)) {
+			this.write(sink);
+		}
+		return buffer.toString(StandardCharsets.UTF_8);
+	}
+
+	private void write(ResultSink sink) throws IOException {
+		sink.write(Paths.get("A.java"), "java", new Range(3, 10), 0b101);
+		sink.write(Paths.get("A.java"), "java", new Range(11, 300), 0);
+	}
+
+}
@@ -0,0 +1,74 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+public class SentenceSplitterTest {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SentenceSplitterTest.class);
+
+	@Test
+	public void split() {
+		assertEquals(List.of(), this.sentences(""));
+		assertEquals(List.of("this class.", "is it safe?", "yes!"), this.sentences("this class. is it safe? yes!"));
+		assertEquals(List.of("println abc .", "substring 1, 2"), this.sentences("println abc . substring 1, 2 "));
+		assertEquals(List.of("for example", "string str abc"), this.sentences("for example\nstring str abc\n\n"));
+		assertEquals(List.of("see n. 1 below."), this.sentences("see n. 1 below."));
+	}
+
+	/**
+	 * Reports how many sentences split by rules are also split by parsing, on the comments of the test corpus.
+	 */
+	@Test
+	public void agreement() throws Exception {
+		List<String> comments = new ArrayList<>();
+		comments.add(new T12ClassifyTest().original);
+		Matcher matcher = Pattern.compile("//.*|(?s)/\\*.*?\\*/")
+				.matcher(Files.readString(Paths.get(
+						"src/main/java/ch/unibe/scg/comment/analysis/neon/cli/StringToHeuristicVector.java")));
+		while (matcher.find()) {
+			comments.add(matcher.group());
+		}
+		ParserPool parsers = new ParserPool(1, null);
+		int rules = 0;
+		int parsed = 0;
+		int agreed = 0;
+		for (String comment : comments) {
+			String normalized = new NormalizedString(comment).normalized;
+			Set<Range> expected = new HashSet<>(SentenceSplitter.split(parsers, normalized));
+			Set<Range> actual = new HashSet<>(SentenceSplitter.split(normalized));
+			rules = rules + actual.size();
+			parsed = parsed + expected.size();
+			actual.retainAll(expected);
+			agreed = agreed + actual.size();
+		}
+		String report = String.format("%d comments, %d sentences by rules, %d by parsing, %d agree",
+				comments.size(),
+				rules,
+				parsed,
+				agreed
+		);
+		LOGGER.info(report);
+		assertEquals(parsed, agreed, report);
+		assertEquals(parsed, rules, report);
+	}
+
+	private List<String> sentences(String normalized) {
+		return SentenceSplitter.split(normalized).stream().map(r -> r.in(normalized)).collect(Collectors.toList());
+	}
+
+}
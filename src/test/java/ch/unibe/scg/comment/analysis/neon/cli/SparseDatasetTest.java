@@ -0,0 +1,85 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.core.Attribute;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.filters.Filter;
+import weka.filters.unsupervised.attribute.Remove;
+import weka.filters.unsupervised.attribute.RemoveByName;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SparseDatasetTest {
+
+	@Test
+	public void write() throws Exception {
+		Instances instances = this.instances();
+		byte[] bytes = SparseDataset.of(instances).write();
+		assertTrue(SparseDataset.isSparseDataset(bytes));
+		assertFalse(SparseDataset.isSparseDataset(InstancesBuilder.save(instances)));
+		SparseDataset dataset = SparseDataset.read(bytes);
+		assertEquals(instances.numInstances(), dataset.numRows());
+		assertEquals(List.of("category-a", "category-b"), dataset.getLabels());
+		assertTrue(dataset.hasLabel(0, 0));
+		assertFalse(dataset.hasLabel(0, 1));
+		assertEquals(instances.toString(), dataset.toInstances().toString());
+		assertArrayEquals(bytes, dataset.write());
+		assertThrows(IOException.class, () -> SparseDataset.read(Arrays.copyOf(bytes, bytes.length / 2)));
+	}
+
+	@Test
+	public void project() throws Exception {
+		Instances instances = this.instances();
+		SparseDataset dataset = SparseDataset.read(SparseDataset.of(instances).write());
+		int[] columns = dataset.columns(n -> n.startsWith("tfidf-"));
+		assertArrayEquals(new int[]{2, 3}, columns);
+		// the same as removing the other label and the heuristics and moving the label last
+		Remove remove = new Remove();
+		remove.setAttributeIndices("1");
+		remove.setInputFormat(instances);
+		Instances expected = Filter.useFilter(instances, remove);
+		RemoveByName heuristics = new RemoveByName();
+		heuristics.setExpression("^heuristic-.*$");
+		heuristics.setInputFormat(expected);
+		expected = Filter.useFilter(expected, heuristics);
+		Instances actual = dataset.project(1, columns).toInstances();
+		assertEquals(expected.numAttributes(), actual.numAttributes());
+		assertEquals(actual.numAttributes() - 1, actual.classIndex());
+		assertEquals("category-b", actual.classAttribute().name());
+		for (int i = 0; i < expected.numInstances(); i = i + 1) {
+			double[] values = expected.instance(i).toDoubleArray();
+			// label was first
+			double[] reordered = new double[values.length];
+			System.arraycopy(values, 1, reordered, 0, values.length - 1);
+			reordered[values.length - 1] = values[0];
+			assertArrayEquals(reordered, actual.instance(i).toDoubleArray());
+		}
+	}
+
+	private Instances instances() {
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("category-a", List.of("0", "1")));
+		attributes.add(new Attribute("category-b", List.of("0", "1")));
+		attributes.add(new Attribute("heuristic-a-x", List.of("0", "1")));
+		attributes.add(new Attribute("heuristic-b-y", List.of("0", "1")));
+		attributes.add(new Attribute("tfidf-class"));
+		attributes.add(new Attribute("tfidf-return"));
+		Instances instances = new Instances("java-features-0-1", attributes, 0);
+		instances.add(new SparseInstance(1, new double[]{1, 1, 0.5}, new int[]{0, 2, 4}, 6));
+		instances.add(new SparseInstance(2, new double[]{1, 1, 1, 0.25, 2.5}, new int[]{0, 1, 3, 4, 5}, 6));
+		instances.add(new SparseInstance(1, new double[]{}, new int[]{}, 6));
+		instances.add(new SparseInstance(1, new double[]{1, 1.75}, new int[]{1, 5}, 6));
+		return instances;
+	}
+
+}
@@ -0,0 +1,57 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.core.SerializationHelper;
+import weka.core.stemmers.IteratedLovinsStemmer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+public class StemCacheTest {
+
+	@Test
+	public void stem() throws Exception {
+		IteratedLovinsStemmer stemmer = new IteratedLovinsStemmer();
+		StemCache cache = new StemCache(4);
+		List<String> words = List.of("returns", "values", "providing", "thread", "safe", "returns", "values");
+		for (String word : words) {
+			assertEquals(stemmer.stem(word), cache.stem(word));
+		}
+		assertEquals(words.size(), cache.getHits() + cache.getMisses());
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Boolean>> results = new ArrayList<>();
+			for (int i = 0; i < 4; i = i + 1) {
+				results.add(executor.submit(() -> {
+					boolean equal = true;
+					for (int j = 0; j < 10000; j = j + 1) {
+						String word = words.get(j % words.size()) + (j % 7);
+						equal = equal && stemmer.stem(word).equals(cache.stem(word));
+					}
+					return equal;
+				}));
+			}
+			for (Future<Boolean> result : results) {
+				assertEquals(true, result.get());
+			}
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test
+	public void serialize() throws Exception {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		SerializationHelper.write(output, StemCache.getInstance());
+		assertSame(StemCache.getInstance(), SerializationHelper.read(new ByteArrayInputStream(output.toByteArray())));
+	}
+
+}
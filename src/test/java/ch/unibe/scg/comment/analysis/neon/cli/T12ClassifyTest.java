@@ -3,12 +3,17 @@ package ch.unibe.scg.comment.analysis.neon.cli;
 import ch.unibe.scg.comment.analysis.neon.cli.NormalizedString.Range;
 import ch.unibe.scg.comment.analysis.neon.cli.task.T12Classify;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
+import java.io.ByteArrayOutputStream;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
+import java.util.SortedMap;
 import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
@@ -134,4 +139,37 @@ public class T12ClassifyTest {
 		assertEquals(result.values().stream().map(Collection::size).reduce(Integer::sum).get(), 5);
 	}
 
+	@Test
+	public void labelFiles(@TempDir Path directory) throws Exception {
+		// more comments than a chunk, split across files
+		List<Path> paths = new ArrayList<>();
+		List<String> sources = new ArrayList<>();
+		for (int i = 0; i < 3; i = i + 1) {
+			StringBuilder source = new StringBuilder();
+			for (int j = 0; j < 100 * (i + 1); j = j + 1) {
+				source.append(String.format("/** Returns the value %d. Never null. */ int f%d() {}\n", j, j));
+			}
+			paths.add(directory.resolve(String.format("F%d.java", i)));
+			sources.add(source.toString());
+			Files.writeString(paths.get(i), sources.get(i));
+		}
+		T12Classify task = new T12Classify("java");
+		ByteArrayOutputStream expected = new ByteArrayOutputStream();
+		try (ResultSink sink = ResultSink.of("tsv", expected, Map.of("java", task.getCategories()))) {
+			List<SortedMap<Range, List<String>>> labels = task.labelAll(sources);
+			for (int i = 0; i < paths.size(); i = i + 1) {
+				for (Map.Entry<Range, List<String>> label : labels.get(i).entrySet()) {
+					long categories = ResultSink.mask(task.getCategories(), label.getValue());
+					sink.write(paths.get(i), "java", label.getKey(), categories);
+				}
+			}
+		}
+		ByteArrayOutputStream actual = new ByteArrayOutputStream();
+		try (ResultSink sink = ResultSink.of("tsv", actual, Map.of("java", task.getCategories()))) {
+			task.labelFiles(paths, sink);
+		}
+		assertEquals(expected.toString().lines().count(), 1200);
+		assertEquals(actual.toString(), expected.toString());
+	}
+
 }
@@ -0,0 +1,29 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import ch.unibe.scg.comment.analysis.neon.cli.task.T13Serve;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class T13ServeTest {
+
+	@Test
+	public void isLoopback() {
+		for (String host : new String[]{
+				"localhost", "LocalHost:8080", "127.0.0.1", "127.0.0.1:8080", "127.255.1.2", "[::1]", "[::1]:8080",
+				"[0:0:0:0:0:0:0:1]:8080"
+		}) {
+			assertTrue(T13Serve.isLoopback(host), host);
+		}
+		// rebound names
+		for (String host : new String[]{
+				null, "", "127.evil.com", "127.evil.com:8080", "127.0.0.1.evil.com", "localhost.evil.com",
+				"evil.com", "127.0.0", "127.0.0.256", "127.0.0.1a", "127..0.1", "128.0.0.1", "10.0.0.1", "[::2]",
+				"[::1]evil.com", "[::1"
+		}) {
+			assertFalse(T13Serve.isLoopback(host), host);
+		}
+	}
+
+}
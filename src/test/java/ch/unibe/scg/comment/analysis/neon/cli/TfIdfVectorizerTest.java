@@ -0,0 +1,89 @@
+package ch.unibe.scg.comment.analysis.neon.cli;
+
+import org.junit.jupiter.api.Test;
+import weka.core.Attribute;
+import weka.core.DictionaryBuilder;
+import weka.core.Instance;
+import weka.core.Instances;
+import weka.core.SparseInstance;
+import weka.core.stemmers.IteratedLovinsStemmer;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+public class TfIdfVectorizerTest {
+
+	@Test
+	public void vectorize() throws Exception {
+		String dictionary = Files.readString(Paths.get("src/main/resources/classifier/java/dictionary.csv"));
+		TfIdfVectorizer vectorizer = new TfIdfVectorizer(dictionary);
+		ArrayList<Attribute> attributes = new ArrayList<>();
+		attributes.add(new Attribute("text", true, null));
+		Instances text = new Instances("text", attributes, 0);
+		DictionaryBuilder builder = this.builder(text, dictionary);
+		Instances format = builder.getVectorizedFormat();
+		assertEquals(format.numAttributes(), vectorizer.getWords().size());
+		for (int i = 0; i < format.numAttributes(); i = i + 1) {
+			assertEquals(format.attribute(i).name(), TfIdfVectorizer.PREFIX + vectorizer.getWords().get(i));
+		}
+		List<String> words = new ArrayList<>(vectorizer.getWords());
+		words.addAll(List.of("Returns", "values", "providing", "THREAD", "unknown", "e.g", "foo()", "x,y"));
+		String delimiters = " \r\n\t.,;:'\"()?!-_";
+		Random random = new Random(1);
+		for (int k = 0; k < 2000; k = k + 1) {
+			StringBuilder sentence = new StringBuilder();
+			int length = random.nextInt(30);
+			for (int i = 0; i < length; i = i + 1) {
+				sentence.append(words.get(random.nextInt(Math.min(words.size(), 200 + k))));
+				sentence.append(delimiters.charAt(random.nextInt(delimiters.length())));
+			}
+			text.attribute(0).setStringValue(sentence.toString());
+			SparseInstance instance = new SparseInstance(1.0, new double[] {0}, new int[] {0}, 1);
+			instance.setDataset(text);
+			Instance expected = builder.vectorizeInstance(instance);
+			TfIdfVectorizer.Terms actual = vectorizer.vectorize(sentence.toString());
+			assertEquals(expected.numValues(), actual.size(), sentence.toString());
+			for (int i = 0; i < actual.size(); i = i + 1) {
+				assertEquals(expected.index(i), actual.index(i));
+				// bit for bit
+				assertEquals(expected.valueSparse(i), actual.weight(i));
+			}
+		}
+	}
+
+	@Test
+	public void read() {
+		assertThrows(IOException.class, () -> new TfIdfVectorizer("class,3\nmethod"));
+		assertThrows(IOException.class, () -> new TfIdfVectorizer("class,3\nclass,4"));
+	}
+
+	/**
+	 * @return the dictionary as the pipeline computed it with Weka
+	 */
+	private DictionaryBuilder builder(Instances text, String dictionary) throws Exception {
+		DictionaryBuilder builder = new DictionaryBuilder();
+		builder.setLowerCaseTokens(true);
+		builder.setStemmer(new IteratedLovinsStemmer());
+		builder.setOutputWordCounts(true);
+		builder.setTFTransform(true);
+		builder.setIDFTransform(true);
+		builder.setAttributeNamePrefix(TfIdfVectorizer.PREFIX);
+		builder.setAttributeIndices("1-1");
+		builder.setup(text);
+		builder.loadDictionary(new StringReader(dictionary));
+		Field mCount = DictionaryBuilder.class.getDeclaredField("m_count");
+		mCount.setAccessible(true);
+		mCount.set(builder, 1000);
+		return builder;
+	}
+
+}